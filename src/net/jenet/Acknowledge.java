@@ -28,10 +28,26 @@ import java.nio.ByteBuffer;
  */
 class Acknowledge extends Command {
 
+        static final ICommandFactory FACTORY = new ICommandFactory() {
+                public Command create() {
+                        return new Acknowledge();
+                }
+        };
+
+        public static final int BYTE_SIZE = Command.BYTE_SIZE + 8;
+
         protected int receivedReliableSequenceNumber;
 
         protected int receivedSentTime;
 
+        public Acknowledge() {
+                super( ACKNOWLEDGE );
+        }
+
+        protected Acknowledge( byte code ) {
+                super( code );
+        }
+
         /*
          * (non-Javadoc)
          * 
@@ -56,6 +72,30 @@ class Acknowledge extends Command {
                 receivedSentTime = buffer.getInt();
         }
 
+        /**
+         * Encodes an acknowledgement without building the command.
+         * 
+         * @param buffer
+         *            The buffer to write to.
+         * @param channelID
+         *            The channel of the command acknowledged.
+         * @param receivedReliableSequenceNumber
+         *            The sequence number of the command acknowledged.
+         * @param receivedSentTime
+         *            The time at which the command acknowledged was sent.
+         */
+        static void toBuffer( ByteBuffer buffer, byte channelID, int receivedReliableSequenceNumber,
+                        int receivedSentTime ) {
+                buffer.put( Command.ACKNOWLEDGE );
+                buffer.put( channelID );
+                buffer.put( (byte) 0 );
+                buffer.put( (byte) 0 );
+                buffer.putInt( BYTE_SIZE );
+                buffer.putInt( 0 );
+                buffer.putInt( receivedReliableSequenceNumber );
+                buffer.putInt( receivedSentTime );
+        }
+
         /**
          * @return Returns the receivedReliableSequenceNumber.
          */
@@ -93,7 +133,7 @@ class Acknowledge extends Command {
          */
         @Override
         public int byteSize() {
-                return super.byteSize() + 8;
+                return BYTE_SIZE;
         }
 
         /*
@@ -105,26 +145,64 @@ class Acknowledge extends Command {
         @Override
         public Event execute( Host host, Peer peer, Header header ) {
                 Event result = new Event();
+
+                if ( !sampleRoundTripTime( host, peer ) )
+                        return result;
+
+                return acknowledge( host, peer, receivedReliableSequenceNumber, result );
+        }
+
+        /**
+         * Measures the round trip time to a peer from the sent time echoed by this
+         * acknowledgement.
+         * 
+         * @return False if the sent time is in the future, in which case the
+         *         acknowledgement is ignored.
+         */
+        boolean sampleRoundTripTime( Host host, Peer peer ) {
                 int timeCurrent = host.getTimeCurrent();
+                int timeStamp = host.getTimeStamp();
                 int roundTripTime;
 
-                if ( Time.less( timeCurrent, receivedSentTime ) )
-                        return result;
+                /*
+                 * Time stamps in microseconds wrap around the int range after about
+                 * 35 minutes, so they are compared by their int difference.
+                 */
+                if ( host.getConfig().highResolutionTiming ) {
+                        roundTripTime = timeStamp - receivedSentTime;
+                        if ( roundTripTime < 0 )
+                                return false;
+                } else {
+                        if ( Time.less( timeStamp, receivedSentTime ) )
+                                return false;
+                        roundTripTime = Time.difference( timeStamp, receivedSentTime ) * 1000;
+                }
 
                 peer.setLastReceiveTime( timeCurrent );
 
-                roundTripTime = Time.difference( timeCurrent, receivedSentTime );
-
                 peer.throttle( roundTripTime );
 
                 peer.updateRoundTripTimeVariance( roundTripTime );
+                return true;
+        }
 
-                Command command = peer.removeSentReliableCommand( receivedReliableSequenceNumber,
-                                this.header.channelID );
+        /**
+         * Removes an acknowledged command from the commands in flight, completing
+         * the connection or disconnection which waited for it.
+         * 
+         * @param reliableSequenceNumber
+         *            The sequence number of the command, on the channel of this
+         *            acknowledgement.
+         * @param result
+         *            The event to return if the state of the peer does not change.
+         * @return The connection or disconnection event, or <code>result</code>.
+         */
+        Event acknowledge( Host host, Peer peer, int reliableSequenceNumber, Event result ) {
+                Command command = peer.removeSentReliableCommand( reliableSequenceNumber, this.header.channelID );
 
                 switch ( peer.getState() ) {
                 case ACKNOWLEDGING_CONNECT:
-                        if ( !( command instanceof VerifyConnect ) )
+                        if ( command == null || command.getCode() != Command.VERIFY_CONNECT )
                                 return result;
                         host.setRecalculateBandwithLimits( true );
                         peer.setState( Peer.STATE.CONNECTED );
@@ -133,7 +211,7 @@ class Acknowledge extends Command {
                         return result;
 
                 case DISCONNECTING:
-                        if ( !( command instanceof Disconnect ) )
+                        if ( command == null || command.getCode() != Command.DISCONNECT )
                                 return result;
                         host.setRecalculateBandwithLimits( true );
                         peer.reset();
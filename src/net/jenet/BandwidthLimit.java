@@ -23,17 +23,26 @@ package net.jenet;
 
 import java.nio.ByteBuffer;
 
-import org.apache.commons.configuration.PropertiesConfiguration;
 
 /**
  * @author Dizan Vasquez
  */
 class BandwidthLimit extends Command {
 
+        static final ICommandFactory FACTORY = new ICommandFactory() {
+                public Command create() {
+                        return new BandwidthLimit();
+                }
+        };
+
         protected int incomingBandwidth;
 
         protected int outgoingBandwidth;
 
+        public BandwidthLimit() {
+                super( BANDWIDTH_LIMIT );
+        }
+
         /*
          * (non-Javadoc)
          * 
@@ -43,25 +52,25 @@ class BandwidthLimit extends Command {
         @Override
         public Event execute( Host host, Peer peer, Header header ) {
                 Event result = new Event();
-                PropertiesConfiguration configuration = peer.getConfiguration();
+                HostConfig config = peer.getConfig();
                 peer.setIncomingBandwidth( incomingBandwidth );
                 peer.setOutgoingBandwidth( outgoingBandwidth );
 
                 int windowSize = 0;
 
                 if ( incomingBandwidth == 0 && host.getOutgoingBandwidth() == 0 )
-                        windowSize = configuration.getInt( "ENET_PROTOCOL_MAXIMUM_WINDOW_SIZE" );
+                        windowSize = config.maximumWindowSize;
                 else {
                         windowSize = incomingBandwidth < host.getOutgoingBandwidth() ? incomingBandwidth : host
                                         .getOutgoingBandwidth();
-                        windowSize = windowSize / configuration.getInt( "ENET_PEER_WINDOW_SIZE_SCALE" );
-                        windowSize *= configuration.getInt( "ENET_PROTOCOL_MINIMUM_WINDOW_SIZE" );
+                        windowSize = windowSize / config.windowSizeScale;
+                        windowSize *= config.minimumWindowSize;
                 }
 
-                if ( windowSize < configuration.getInt( "ENET_PROTOCOL_MINIMUM_WINDOW_SIZE" ) )
-                        windowSize = configuration.getInt( "ENET_PROTOCOL_MINIMUM_WINDOW_SIZE" );
-                else if ( windowSize > configuration.getInt( "ENET_PROTOCOL_MAXIMUM_WINDOW_SIZE" ) )
-                        windowSize = configuration.getInt( "ENET_PROTOCOL_MAXIMUM_WINDOW_SIZE" );
+                if ( windowSize < config.minimumWindowSize )
+                        windowSize = config.minimumWindowSize;
+                else if ( windowSize > config.maximumWindowSize )
+                        windowSize = config.maximumWindowSize;
 
                 peer.setWindowSize( windowSize );
                 return result;
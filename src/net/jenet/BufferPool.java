@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2005 Dizan Vasquez
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.jenet;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * A pool of fixed size direct buffers. Buffers are handed out as
+ * {@link PooledBuffer} objects holding a reference count, and go back to the
+ * pool once the last reference to them is released.
+ */
+class BufferPool {
+
+        protected int bufferSize;
+
+        protected ArrayDeque<PooledBuffer> buffers = new ArrayDeque<PooledBuffer>();
+
+        protected long hits;
+
+        protected int maximumSize;
+
+        protected long misses;
+
+        /**
+         * @param bufferSize
+         *            The capacity in bytes of every buffer in this pool.
+         * @param maximumSize
+         *            The maximum number of idle buffers kept by this pool.
+         */
+        BufferPool( int bufferSize, int maximumSize ) {
+                super();
+                this.bufferSize = bufferSize;
+                this.maximumSize = maximumSize;
+        }
+
+        /**
+         * Takes a buffer from the pool, allocating a new one if the pool is empty.
+         * The returned buffer is cleared and has a reference count of one.
+         * 
+         * @return A buffer of <code>bufferSize</code> bytes.
+         */
+        PooledBuffer acquire() {
+                PooledBuffer result = buffers.poll();
+                if ( result == null ) {
+                        misses++;
+                        result = new PooledBuffer( this, ByteBuffer.allocateDirect( bufferSize ) );
+                } else
+                        hits++;
+                result.getData().clear();
+                result.setReferenceCount( 1 );
+                return result;
+        }
+
+        /**
+         * @return Returns the bufferSize.
+         */
+        int getBufferSize() {
+                return bufferSize;
+        }
+
+        /**
+         * @return Returns the number of requests served from the pool.
+         */
+        long getHits() {
+                return hits;
+        }
+
+        /**
+         * @return Returns the number of requests that needed a new allocation.
+         */
+        long getMisses() {
+                return misses;
+        }
+
+        /**
+         * @return Returns the number of idle buffers.
+         */
+        int getSize() {
+                return buffers.size();
+        }
+
+        /**
+         * Returns a buffer whose reference count dropped to zero. Buffers beyond
+         * <code>maximumSize</code> are left to the garbage collector.
+         * 
+         * @param buffer
+         *            The buffer to recycle.
+         */
+        void recycle( PooledBuffer buffer ) {
+                if ( buffers.size() < maximumSize )
+                        buffers.push( buffer );
+        }
+}
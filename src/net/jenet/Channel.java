@@ -21,7 +21,7 @@
  */
 package net.jenet;
 
-import java.util.LinkedList;
+import java.util.ArrayDeque;
 
 /**
  * @author Dizan Vasquez
@@ -29,6 +29,17 @@ import java.util.LinkedList;
  */
 class Channel {
 
+        static final int INITIAL_INCOMING_RELIABLE_COMMANDS = 64;
+
+        /**
+         * How far ahead of <code>incomingReliableSequenceNumber</code> a
+         * reliable command is accepted, in sequence numbers. It bounds the ring
+         * of incoming reliable commands, as ENet's reliable window does.
+         */
+        static final int INCOMING_RELIABLE_WINDOW = 4096;
+
+        static final int INITIAL_SENT_RELIABLE_COMMANDS = 64;
+
         protected int outgoingReliableSequenceNumber;
 
         protected int outgoingUnreliableSequenceNumber;
@@ -37,24 +48,25 @@ class Channel {
 
         protected int incomingUnreliableSequenceNumber;
 
-        protected LinkedList<IncomingCommand> incomingReliableCommands = new LinkedList<IncomingCommand>();
-
-        protected LinkedList<IncomingCommand> incomingUnreliableCommands = new LinkedList<IncomingCommand>();
-
         /**
-         * @return Returns the incomingReliableCommands.
+         * The reliable commands received on this channel and not yet delivered,
+         * indexed by their sequence number modulo the length of the array. All of
+         * them are ahead of <code>incomingReliableSequenceNumber</code> by less
+         * than the length of the array, so no two share a slot; a slot holding a
+         * command at or behind it is stale.
          */
-        public LinkedList<IncomingCommand> getIncomingReliableCommands() {
-                return incomingReliableCommands;
-        }
+        protected IncomingCommand[] incomingReliableCommands = new IncomingCommand[INITIAL_INCOMING_RELIABLE_COMMANDS];
+
+        protected int incomingReliableCommandCount;
+
+        protected ArrayDeque<IncomingCommand> incomingUnreliableCommands = new ArrayDeque<IncomingCommand>();
 
         /**
-         * @param incomingReliableCommands
-         *            The incomingReliableCommands to set.
+         * The reliable commands sent on this channel and not yet acknowledged,
+         * indexed by their sequence number modulo the length of the array. The
+         * array grows whenever two of them would share a slot.
          */
-        public void setIncomingReliableCommands( LinkedList<IncomingCommand> incomingReliableCommands ) {
-                this.incomingReliableCommands = incomingReliableCommands;
-        }
+        protected OutgoingCommand[] sentReliableCommands = new OutgoingCommand[INITIAL_SENT_RELIABLE_COMMANDS];
 
         /**
          * @return Returns the incomingReliableSequenceNumber.
@@ -74,7 +86,7 @@ class Channel {
         /**
          * @return Returns the incomingUnreliableCommands.
          */
-        public LinkedList<IncomingCommand> getIncomingUnreliableCommands() {
+        public ArrayDeque<IncomingCommand> getIncomingUnreliableCommands() {
                 return incomingUnreliableCommands;
         }
 
@@ -82,7 +94,7 @@ class Channel {
          * @param incomingUnreliableCommands
          *            The incomingUnreliableCommands to set.
          */
-        public void setIncomingUnreliableCommands( LinkedList<IncomingCommand> incomingUnreliableCommands ) {
+        public void setIncomingUnreliableCommands( ArrayDeque<IncomingCommand> incomingUnreliableCommands ) {
                 this.incomingUnreliableCommands = incomingUnreliableCommands;
         }
 
@@ -131,4 +143,173 @@ class Channel {
                 this.outgoingUnreliableSequenceNumber = outgoingUnreliableSequenceNumber;
         }
 
-}
\ No newline at end of file
+        /**
+         * Queues a reliable command received on this channel.
+         * 
+         * @param incomingCommand
+         *            The command received, which must be ahead of
+         *            <code>incomingReliableSequenceNumber</code> and not
+         *            already queued.
+         * @return Whether the command was queued; it is not when it is more
+         *         than {@link #INCOMING_RELIABLE_WINDOW} ahead, and will be sent
+         *         again.
+         */
+        boolean addIncomingReliableCommand( IncomingCommand incomingCommand ) {
+                int distance = incomingCommand.reliableSequenceNumber - incomingReliableSequenceNumber;
+                int slot;
+
+                if ( distance > INCOMING_RELIABLE_WINDOW )
+                        return false;
+                if ( distance > incomingReliableCommands.length ) {
+                        int length = incomingReliableCommands.length * 2;
+                        while ( length < distance )
+                                length *= 2;
+                        growIncomingReliableCommands( length );
+                }
+                slot = incomingCommand.reliableSequenceNumber & ( incomingReliableCommands.length - 1 );
+                if ( incomingReliableCommands[slot] != null )
+                        discardIncomingReliableCommand( slot );
+                incomingReliableCommands[slot] = incomingCommand;
+                incomingReliableCommandCount++;
+                return true;
+        }
+
+        /**
+         * Releases every queued reliable command.
+         */
+        void clearIncomingReliableCommands() {
+                for ( int slot = 0; slot < incomingReliableCommands.length; slot++ )
+                        if ( incomingReliableCommands[slot] != null )
+                                discardIncomingReliableCommand( slot );
+        }
+
+        private void discardIncomingReliableCommand( int slot ) {
+                IncomingCommand incomingCommand = incomingReliableCommands[slot];
+
+                if ( incomingCommand.packet != null )
+                        incomingCommand.packet.release();
+                incomingReliableCommands[slot] = null;
+                incomingReliableCommandCount--;
+        }
+
+        /**
+         * Finds a queued reliable command.
+         * 
+         * @param reliableSequenceNumber
+         *            The sequence number of the command.
+         * @return The command, or null if none with that sequence number is
+         *         queued.
+         */
+        IncomingCommand getIncomingReliableCommand( int reliableSequenceNumber ) {
+                IncomingCommand incomingCommand = incomingReliableCommands[reliableSequenceNumber
+                                & ( incomingReliableCommands.length - 1 )];
+
+                if ( incomingCommand == null || incomingCommand.reliableSequenceNumber != reliableSequenceNumber )
+                        return null;
+                return incomingCommand;
+        }
+
+        /**
+         * @return The queued reliable command following the last one delivered,
+         *         or null if it has not been received yet.
+         */
+        IncomingCommand getNextIncomingReliableCommand() {
+                int reliableSequenceNumber = incomingReliableSequenceNumber + 1;
+                int slot = reliableSequenceNumber & ( incomingReliableCommands.length - 1 );
+                IncomingCommand incomingCommand = incomingReliableCommands[slot];
+
+                if ( incomingCommand == null || incomingCommand.reliableSequenceNumber == reliableSequenceNumber )
+                        return incomingCommand;
+                if ( incomingCommand.reliableSequenceNumber <= incomingReliableSequenceNumber )
+                        discardIncomingReliableCommand( slot );
+                return null;
+        }
+
+        private void growIncomingReliableCommands( int length ) {
+                IncomingCommand[] grown = new IncomingCommand[length];
+
+                for ( int slot = 0; slot < incomingReliableCommands.length; slot++ ) {
+                        IncomingCommand incomingCommand = incomingReliableCommands[slot];
+                        if ( incomingCommand == null )
+                                continue;
+                        if ( incomingCommand.reliableSequenceNumber <= incomingReliableSequenceNumber )
+                                discardIncomingReliableCommand( slot );
+                        else
+                                grown[incomingCommand.reliableSequenceNumber & ( length - 1 )] = incomingCommand;
+                }
+                incomingReliableCommands = grown;
+        }
+
+        /**
+         * @return Whether any reliable command is queued.
+         */
+        boolean hasIncomingReliableCommands() {
+                return incomingReliableCommandCount > 0;
+        }
+
+        /**
+         * Indexes a reliable command which has been sent on this channel.
+         * Sequence numbers are unique among the commands waiting for an
+         * acknowledgement on a channel.
+         * 
+         * @param outgoingCommand
+         *            The command sent.
+         */
+        void addSentReliableCommand( OutgoingCommand outgoingCommand ) {
+                int slot = outgoingCommand.reliableSequenceNumber & ( sentReliableCommands.length - 1 );
+
+                while ( sentReliableCommands[slot] != null ) {
+                        growSentReliableCommands( sentReliableCommands.length * 2 );
+                        slot = outgoingCommand.reliableSequenceNumber & ( sentReliableCommands.length - 1 );
+                }
+                sentReliableCommands[slot] = outgoingCommand;
+        }
+
+        private void growSentReliableCommands( int length ) {
+                OutgoingCommand[] grown = new OutgoingCommand[length];
+
+                for ( OutgoingCommand outgoingCommand : sentReliableCommands ) {
+                        if ( outgoingCommand == null )
+                                continue;
+                        int slot = outgoingCommand.reliableSequenceNumber & ( length - 1 );
+                        if ( grown[slot] != null ) {
+                                growSentReliableCommands( length * 2 );
+                                return;
+                        }
+                        grown[slot] = outgoingCommand;
+                }
+                sentReliableCommands = grown;
+        }
+
+        /**
+         * Removes a queued reliable command.
+         * 
+         * @param incomingCommand
+         *            The command, which must be queued.
+         */
+        void removeIncomingReliableCommand( IncomingCommand incomingCommand ) {
+                int slot = incomingCommand.reliableSequenceNumber & ( incomingReliableCommands.length - 1 );
+
+                incomingReliableCommands[slot] = null;
+                incomingReliableCommandCount--;
+        }
+
+        /**
+         * Removes a sent reliable command from the index.
+         * 
+         * @param reliableSequenceNumber
+         *            The sequence number of the command.
+         * @return The command, or null if none with that sequence number is
+         *         waiting for an acknowledgement.
+         */
+        OutgoingCommand removeSentReliableCommand( int reliableSequenceNumber ) {
+                int slot = reliableSequenceNumber & ( sentReliableCommands.length - 1 );
+                OutgoingCommand outgoingCommand = sentReliableCommands[slot];
+
+                if ( outgoingCommand == null || outgoingCommand.reliableSequenceNumber != reliableSequenceNumber )
+                        return null;
+                sentReliableCommands[slot] = null;
+                return outgoingCommand;
+        }
+
+}
@@ -35,94 +35,50 @@ abstract class Command implements IBufferable {
 
         public static final int BYTE_SIZE = Header.BYTE_SIZE;
 
+        public static final byte NONE = 0;
+
+        public static final byte ACKNOWLEDGE = 1;
+
+        public static final byte CONNECT = 2;
+
+        public static final byte VERIFY_CONNECT = 3;
+
+        public static final byte DISCONNECT = 4;
+
+        public static final byte PING = 5;
+
+        public static final byte SEND_RELIABLE = 6;
+
+        public static final byte SEND_UNRELIABLE = 7;
+
+        public static final byte SEND_FRAGMENT = 8;
+
+        public static final byte BANDWIDTH_LIMIT = 9;
+
+        public static final byte THROTTLE_CONFIGURE = 10;
+
+        public static final byte SEND_UNSEQUENCED = 11;
+
+        public static final byte SELECTIVE_ACKNOWLEDGE = 12;
+
         public static byte commandCode( Command command ) {
-                if ( command instanceof None )
-                        return 0;
-                else if ( command instanceof Acknowledge )
-                        return 1;
-                else if ( command instanceof Connect )
-                        return 2;
-                else if ( command instanceof VerifyConnect )
-                        return 3;
-                else if ( command instanceof Disconnect )
-                        return 4;
-                else if ( command instanceof Ping )
-                        return 5;
-                else if ( command instanceof SendReliable )
-                        return 6;
-                else if ( command instanceof SendUnreliable )
-                        return 7;
-                else if ( command instanceof SendFragment )
-                        return 8;
-                else if ( command instanceof BandwidthLimit )
-                        return 9;
-                else if ( command instanceof ThrottleConfigure )
-                        return 10;
-                else
-                        return 11;
+                return command.getCode();
         }
 
         public static Command readCommand( ByteBuffer buffer ) {
-                int position = buffer.position();
-                Command command = null;
+                Command command = CommandRegistry.create( buffer.get( buffer.position() ) );
 
-                CommandHeader header = new CommandHeader();
-                header.fromBuffer( buffer );
-                buffer.position( position );
-
-                switch ( header.getCommand() ) {
-                case 0:
-                        command = new None();
-                        break;
-                case 1:
-                        command = new Acknowledge();
-                        break;
-                case 2:
-                        command = new Connect();
-                        break;
-                case 3:
-                        command = new VerifyConnect();
-                        break;
-                case 4:
-                        command = new Disconnect();
-                        break;
-                case 5:
-                        command = new Ping();
-                        break;
-                case 6:
-                        command = new SendReliable();
-                        break;
-                case 7:
-                        command = new SendUnreliable();
-                        break;
-                case 8:
-                        command = new SendFragment();
-                        break;
-                case 9:
-                        command = new BandwidthLimit();
-                        break;
-                case 10:
-                        command = new ThrottleConfigure();
-                        break;
-                case 11:
-                        command = new SendUnsequenced();
-                        break;
-
-                default:
-                        command = null;
-                        return command;
-                }
-
-                command.fromBuffer( buffer );
+                if ( command != null )
+                        command.fromBuffer( buffer );
 
                 return command;
         }
 
         protected CommandHeader header = new CommandHeader();
 
-        public Command() {
+        protected Command( byte code ) {
                 super();
-                header.setCommand( commandCode( this ) );
+                header.setCommand( code );
                 header.setCommandLength( this.byteSize() );
         }
 
@@ -154,6 +110,13 @@ abstract class Command implements IBufferable {
                 header.fromBuffer( buffer );
         }
 
+        /**
+         * @return Returns the code of this command.
+         */
+        public byte getCode() {
+                return header.getCommand();
+        }
+
         /**
          * @return Returns the header.
          */
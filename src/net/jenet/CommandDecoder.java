@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2005 Dizan Vasquez
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.jenet;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes received datagrams without allocating. A decoder keeps one
+ * instance of every command and a single header, which are overwritten by
+ * each datagram it reads, so they are only valid until the next one.
+ * Commands that must outlive the datagram are copied by whoever keeps them.
+ */
+class CommandDecoder {
+
+        protected Command[] commands = new Command[CommandRegistry.MAXIMUM_COMMANDS];
+
+        protected Header header = new Header();
+
+        /**
+         * Reads the header of a datagram.
+         * 
+         * @param buffer
+         *            The datagram, positioned at its header.
+         * @return The decoder's header, or null if the datagram is too short.
+         */
+        Header readHeader( ByteBuffer buffer ) {
+                if ( buffer.remaining() < Header.BYTE_SIZE )
+                        return null;
+                header.fromBuffer( buffer );
+                return header;
+        }
+
+        /**
+         * Reads the next command of a datagram, leaving the buffer at the
+         * command's payload if it has one.
+         * 
+         * @param buffer
+         *            The datagram, positioned at a command.
+         * @return The decoder's instance of the command, or null if the command is
+         *         unknown or truncated.
+         */
+        Command readCommand( ByteBuffer buffer ) {
+                if ( !buffer.hasRemaining() )
+                        return null;
+                byte code = buffer.get( buffer.position() );
+                Command command = commands[code & 0xFF];
+                if ( command == null ) {
+                        command = CommandRegistry.create( code );
+                        if ( command == null )
+                                return null;
+                        commands[code & 0xFF] = command;
+                }
+
+                if ( buffer.remaining() < command.byteSize() )
+                        return null;
+                command.fromBuffer( buffer );
+                return command;
+        }
+}
@@ -35,6 +35,19 @@ class CommandHeader implements IBufferable {
         
         public static final int BYTE_SIZE = 12;
 
+        /**
+         * Set in the reserved byte of a connect or verify connect command by a host
+         * which stamps its sent times in microseconds. The peer then knows the unit
+         * of the sent times it echoes back.
+         */
+        public static final byte CAPABILITY_HIGH_RESOLUTION_TIMING = 1;
+
+        /**
+         * Set in the reserved byte of a connect or verify connect command by a host
+         * which understands {@link SelectiveAcknowledge} commands.
+         */
+        public static final byte CAPABILITY_SELECTIVE_ACKNOWLEDGEMENT = 2;
+
         protected byte channelID;
 
         protected byte command;
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2005 Dizan Vasquez
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.jenet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ * A pool of the records a host keeps about the commands it sends and
+ * receives. The commands sending packets and their outgoing and incoming
+ * records are taken from it and handed back once they are acknowledged,
+ * delivered or dropped, so that steady state traffic does not allocate.
+ * <p>
+ * Only the command types taken with {@link #acquireCommand acquireCommand}
+ * are pooled; other commands handed back are left to the garbage collector.
+ */
+class CommandPool {
+
+        /**
+         * The codes of the command types which are pooled.
+         */
+        static final byte[] POOLED_COMMANDS = { Command.SEND_RELIABLE, Command.SEND_UNRELIABLE,
+                        Command.SEND_FRAGMENT, Command.SEND_UNSEQUENCED };
+
+        protected ArrayList<ArrayDeque<Command>> commands = new ArrayList<ArrayDeque<Command>>();
+
+        protected ArrayDeque<IncomingCommand> incomingCommands = new ArrayDeque<IncomingCommand>();
+
+        protected ArrayDeque<OutgoingCommand> outgoingCommands = new ArrayDeque<OutgoingCommand>();
+
+        /**
+         * Creates an empty pool.
+         */
+        CommandPool() {
+                super();
+                for ( int code = 0; code < CommandRegistry.MAXIMUM_COMMANDS; code++ )
+                        commands.add( null );
+                for ( byte code : POOLED_COMMANDS )
+                        commands.set( code & 0xFF, new ArrayDeque<Command>() );
+        }
+
+        /**
+         * Takes a command of a pooled type. Its fields keep the values of its
+         * last use and must all be set.
+         * 
+         * @param code
+         *            The code of the command, one of {@link #POOLED_COMMANDS}.
+         * @return The command.
+         */
+        Command acquireCommand( byte code ) {
+                Command command = commands.get( code & 0xFF ).poll();
+                return command == null ? CommandRegistry.create( code ) : command;
+        }
+
+        IncomingCommand acquireIncomingCommand() {
+                IncomingCommand incomingCommand = incomingCommands.poll();
+                return incomingCommand == null ? new IncomingCommand() : incomingCommand;
+        }
+
+        OutgoingCommand acquireOutgoingCommand() {
+                OutgoingCommand outgoingCommand = outgoingCommands.poll();
+                return outgoingCommand == null ? new OutgoingCommand() : outgoingCommand;
+        }
+
+        /**
+         * @return The number of idle outgoing commands.
+         */
+        int getOutgoingCommandCount() {
+                return outgoingCommands.size();
+        }
+
+        /**
+         * Hands back a delivered or dropped incoming command. Its packet now
+         * belongs to whoever it was delivered to.
+         * 
+         * @param incomingCommand
+         *            The command, which must not be queued anymore.
+         */
+        void recycle( IncomingCommand incomingCommand ) {
+                incomingCommand.command = null;
+                incomingCommand.fragments = null;
+                incomingCommand.packet = null;
+                incomingCommands.push( incomingCommand );
+        }
+
+        /**
+         * Hands back an outgoing command which has been acknowledged, sent
+         * unreliably or dropped, along with its command if that is of a pooled
+         * type. The reference it held to its packet must have been removed.
+         * 
+         * @param outgoingCommand
+         *            The command, which must not be in any list anymore.
+         */
+        void recycle( OutgoingCommand outgoingCommand ) {
+                ArrayDeque<Command> free = commands.get( outgoingCommand.command.getCode() & 0xFF );
+
+                if ( free != null )
+                        free.push( outgoingCommand.command );
+                outgoingCommand.command = null;
+                outgoingCommand.packet = null;
+                if ( outgoingCommand.encodedCommand != null )
+                        outgoingCommand.encodedCommand.limit( 0 );
+                outgoingCommands.push( outgoingCommand );
+        }
+}
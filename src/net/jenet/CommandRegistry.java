@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2005 Dizan Vasquez
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.jenet;
+
+/**
+ * The table of command factories, indexed by the command code sent on the
+ * wire. Each command encodes, decodes and executes itself, so the factory is
+ * all a host needs to handle a code. The ENet commands are registered here;
+ * extensions register their own factories with unused codes before any host is
+ * created.
+ */
+class CommandRegistry {
+
+        /**
+         * The number of command codes, which are sent as one unsigned byte.
+         */
+        public static final int MAXIMUM_COMMANDS = 256;
+
+        private static volatile ICommandFactory[] factories = new ICommandFactory[MAXIMUM_COMMANDS];
+
+        static {
+                register( Command.NONE, None.FACTORY );
+                register( Command.ACKNOWLEDGE, Acknowledge.FACTORY );
+                register( Command.CONNECT, Connect.FACTORY );
+                register( Command.VERIFY_CONNECT, VerifyConnect.FACTORY );
+                register( Command.DISCONNECT, Disconnect.FACTORY );
+                register( Command.PING, Ping.FACTORY );
+                register( Command.SEND_RELIABLE, SendReliable.FACTORY );
+                register( Command.SEND_UNRELIABLE, SendUnreliable.FACTORY );
+                register( Command.SEND_FRAGMENT, SendFragment.FACTORY );
+                register( Command.BANDWIDTH_LIMIT, BandwidthLimit.FACTORY );
+                register( Command.THROTTLE_CONFIGURE, ThrottleConfigure.FACTORY );
+                register( Command.SEND_UNSEQUENCED, SendUnsequenced.FACTORY );
+                register( Command.SELECTIVE_ACKNOWLEDGE, SelectiveAcknowledge.FACTORY );
+        }
+
+        /**
+         * Registers a command factory. The commands it creates must carry the
+         * same code.
+         * 
+         * @param code
+         *            The code of the command, between 0 and 255.
+         * @param factory
+         *            The factory of the command.
+         * @throws IllegalArgumentException
+         *             If the code is out of range or taken by another factory.
+         */
+        static synchronized void register( int code, ICommandFactory factory ) {
+                if ( code < 0 || code >= MAXIMUM_COMMANDS )
+                        throw new IllegalArgumentException( "Invalid command code " + code );
+                if ( factories[code] != null && factories[code] != factory )
+                        throw new IllegalArgumentException( "Command code " + code + " is already registered" );
+                ICommandFactory[] registered = factories.clone();
+                registered[code] = factory;
+                factories = registered;
+        }
+
+        /**
+         * Creates an empty command.
+         * 
+         * @param code
+         *            The code of the command.
+         * @return A new command, or null if the code is not registered.
+         */
+        static Command create( byte code ) {
+                ICommandFactory factory = factories[code & 0xFF];
+                if ( factory == null )
+                        return null;
+                return factory.create();
+        }
+}
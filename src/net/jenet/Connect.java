@@ -22,15 +22,19 @@
 package net.jenet;
 
 import java.nio.ByteBuffer;
-import java.util.HashMap;
 
-import org.apache.commons.configuration.PropertiesConfiguration;
 
 /**
  * @author Dizan Vasquez
  */
 class Connect extends Command {
 
+        static final ICommandFactory FACTORY = new ICommandFactory() {
+                public Command create() {
+                        return new Connect();
+                }
+        };
+
         protected int channelCount;
 
         protected int incomingBandwidth;
@@ -49,6 +53,10 @@ class Connect extends Command {
 
         protected int windowSize;
 
+        public Connect() {
+                super( CONNECT );
+        }
+
         /*
          * (non-Javadoc)
          * 
@@ -59,21 +67,21 @@ class Connect extends Command {
         public Event execute( Host host, Peer peer, Header header ) {
                 Event result = new Event();
                 VerifyConnect verifyConnect = new VerifyConnect();
-                PropertiesConfiguration configuration = host.getConfiguration();
+                HostConfig config = host.getConfig();
 
-                if ( channelCount < configuration.getInt( "ENET_PROTOCOL_MINIMUM_CHANNEL_COUNT" )
-                                || channelCount > configuration.getInt( "ENET_PROTOCOL_MAXIMUM_CHANNEL_COUNT" ) )
+                if ( channelCount < config.minimumChannelCount
+                                || channelCount > config.maximumChannelCount )
                         return result;
 
-                for ( Peer currentPeer : host.getPeers().values() )
-                        if ( !currentPeer.isDisconnected() && currentPeer.getAddress() == host.getReceivedAddress()
-                                        && currentPeer.getChallenge() == header.getChallenge() )
-                                return result;
+                Peer currentPeer = host.findPeer( host.getReceivedAddress(), header.getChallenge() );
+                if ( currentPeer != null && !currentPeer.isDisconnected() )
+                        return result;
 
-                Peer currentPeer = null;
+                currentPeer = null;
 
-                if ( host.getPeers().values().size() < host.getMaxConnections() ) {
+                if ( host.getPeers().size() < host.getMaxConnections() ) {
                         currentPeer = new Peer( host, host.getReceivedAddress(), channelCount );
+                        currentPeer.setChallenge( header.getChallenge() );
                         host.assignPeerID( currentPeer );
                 }
 
@@ -81,55 +89,53 @@ class Connect extends Command {
                         return result;
 
                 currentPeer.setState( Peer.STATE.ACKNOWLEDGING_CONNECT );
-                currentPeer.setChallenge( header.getChallenge() );
-                currentPeer.setAddress( host.getReceivedAddress() );
                 currentPeer.setOutgoingPeerID( outgoingPeerID );
                 currentPeer.setIncomingBandwidth( incomingBandwidth );
                 currentPeer.setOutgoingBandwidth( outgoingBandwidth );
                 currentPeer.setPacketThrottleInterval( packetThrottleInterval );
                 currentPeer.setPacketThrottleAcceleration( packetThrottleAcceleration );
                 currentPeer.setPacketThrottleDeceleration( packetThrottleDeceleration );
-                currentPeer.setChannels( new HashMap<Byte, Channel>() );
-                currentPeer.setChannelCount( channelCount );
+                currentPeer.setCapabilities( getHeader().getReserved() );
 
-                if ( mtu < configuration.getShort( "ENET_PROTOCOL_MINIMUM_MTU" ) )
-                        mtu = configuration.getShort( "ENET_PROTOCOL_MINIMUM_MTU" );
-                else if ( mtu > configuration.getShort( "ENET_PROTOCOL_MAXIMUM_MTU" ) )
-                        mtu = configuration.getShort( "ENET_PROTOCOL_MAXIMUM_MTU" );
+                if ( mtu < config.minimumMtu )
+                        mtu = (short) config.minimumMtu;
+                else if ( mtu > config.maximumMtu )
+                        mtu = (short) config.maximumMtu;
 
                 currentPeer.setMtu( mtu );
 
                 int peerWindowSize;
                 if ( incomingBandwidth == 0 && host.getOutgoingBandwidth() == 0 )
-                        peerWindowSize = configuration.getInt( "ENET_PROTOCOL_MAXIMUM_WINDOW_SIZE" );
+                        peerWindowSize = config.maximumWindowSize;
                 else {
                         peerWindowSize = incomingBandwidth < host.getOutgoingBandwidth() ? incomingBandwidth : host
                                         .getOutgoingBandwidth();
-                        peerWindowSize = peerWindowSize / configuration.getInt( "ENET_PEER_WINDOW_SIZE_SCALE" );
-                        peerWindowSize *= configuration.getInt( "ENET_PROTOCOL_MINIMUM_WINDOW_SIZE" );
+                        peerWindowSize = peerWindowSize / config.windowSizeScale;
+                        peerWindowSize *= config.minimumWindowSize;
                 }
 
-                if ( peerWindowSize < configuration.getInt( "ENET_PROTOCOL_MINIMUM_WINDOW_SIZE" ) )
-                        peerWindowSize = configuration.getInt( "ENET_PROTOCOL_MINIMUM_WINDOW_SIZE" );
-                else if ( peerWindowSize > configuration.getInt( "ENET_PROTOCOL_MAXIMUM_WINDOW_SIZE" ) )
-                        peerWindowSize = configuration.getInt( "ENET_PROTOCOL_MAXIMUM_WINDOW_SIZE" );
+                if ( peerWindowSize < config.minimumWindowSize )
+                        peerWindowSize = config.minimumWindowSize;
+                else if ( peerWindowSize > config.maximumWindowSize )
+                        peerWindowSize = config.maximumWindowSize;
 
                 currentPeer.setWindowSize( peerWindowSize );
 
                 if ( host.getIncomingBandwidth() == 0 )
-                        windowSize = configuration.getInt( "ENET_PROTOCOL_MAXIMUM_WINDOW_SIZE" );
+                        windowSize = config.maximumWindowSize;
                 else {
-                        windowSize = host.getIncomingBandwidth() / configuration.getInt( "ENET_PEER_WINDOW_SIZE_SCALE" );
-                        windowSize = windowSize * configuration.getInt( "ENET_PROTOCOL_MINIMUM_WINDOW_SIZE" );
+                        windowSize = host.getIncomingBandwidth() / config.windowSizeScale;
+                        windowSize = windowSize * config.minimumWindowSize;
                 }
 
-                if ( windowSize < configuration.getInt( "ENET_PROTOCOL_MINIMUM_WINDOW_SIZE" ) )
-                        windowSize = configuration.getInt( "ENET_PROTOCOL_MINIMUM_WINDOW_SIZE" );
-                else if ( windowSize > configuration.getInt( "ENET_PROTOCOL_MAXIMUM_WINDOW_SIZE" ) )
-                        windowSize = configuration.getInt( "ENET_PROTOCOL_MAXIMUM_WINDOW_SIZE" );
+                if ( windowSize < config.minimumWindowSize )
+                        windowSize = config.minimumWindowSize;
+                else if ( windowSize > config.maximumWindowSize )
+                        windowSize = config.maximumWindowSize;
 
                 verifyConnect.getHeader().setChannelID( (byte) 0xFF );
                 verifyConnect.getHeader().setFlags( Header.FLAG_ACKNOWLEDGE );
+                verifyConnect.getHeader().setReserved( host.getCapabilities() );
                 verifyConnect.setOutgoingPeerID( currentPeer.getIncomingPeerID() );
                 verifyConnect.setMtu( mtu );
                 verifyConnect.setWindowSize( windowSize );
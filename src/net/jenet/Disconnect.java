@@ -26,6 +26,16 @@ package net.jenet;
  */
 class Disconnect extends Command {
 
+        static final ICommandFactory FACTORY = new ICommandFactory() {
+                public Command create() {
+                        return new Disconnect();
+                }
+        };
+
+        public Disconnect() {
+                super( DISCONNECT );
+        }
+
         /*
          * (non-Javadoc)
          * 
@@ -67,10 +67,25 @@ public class Event {
 
         public TYPE type;
 
-        Event() {
+        /**
+         * Creates an empty event, of type <code>NONE</code>. Events can be
+         * created up front to fill the batches passed to
+         * {@link net.jenet.Host#service(int, Event[]) Host.service}.
+         */
+        public Event() {
                 type = TYPE.NONE;
         }
 
+        /**
+         * Empties this event so that it can be reused.
+         */
+        void clear() {
+                type = TYPE.NONE;
+                channelID = 0;
+                packet = null;
+                peer = null;
+        }
+
         /**
          * Returns the ID of the channel related to this event.
          * @return channelID.
@@ -129,6 +144,19 @@ public class Event {
                 this.peer = peer;
         }
 
+        /**
+         * Makes this event a copy of another one.
+         * 
+         * @param event
+         *            The event to copy.
+         */
+        void set( Event event ) {
+                type = event.type;
+                channelID = event.channelID;
+                packet = event.packet;
+                peer = event.peer;
+        }
+
         /**
          * @param type
          *            The type to set.
@@ -28,12 +28,12 @@ import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.commons.configuration.ConfigurationException;
-import org.apache.commons.configuration.PropertiesConfiguration;
 import org.apache.commons.lang.builder.ToStringBuilder;
 import org.apache.commons.lang.builder.ToStringStyle;
 import org.apache.commons.logging.Log;
@@ -64,17 +64,34 @@ public class Host {
 
         protected ByteBuffer buffers;
 
-        protected ConcurrentLinkedQueue<Command> commands = new ConcurrentLinkedQueue<Command>();
+        protected IClock clock;
+
+        /**
+         * The number of commands buffered in the datagram being built.
+         */
+        protected int commandCount;
+
+        protected CommandPool commandPool = new CommandPool();
 
         protected DatagramChannel communicationChannel;
 
+        protected ConcurrentLinkedQueue<Event> events = new ConcurrentLinkedQueue<Event>();
+
+        /**
+         * The batch of one through which {@link #service(int)} runs the service
+         * loop. Its slot is emptied on every call, so each event returned is new.
+         */
+        protected Event[] serviceEvent = new Event[1];
+
         protected Selector communicationSelector;
 
-        protected PropertiesConfiguration configuration;
+        protected HostConfig config;
 
         protected int incomingBandwidth;
 
-        protected Peer lastServicedPeer;
+        protected Peer dispatchQueue;
+
+        protected Peer dispatchQueueTail;
 
         protected int maxConnections;
 
@@ -82,18 +99,73 @@ public class Host {
 
         protected int outgoingBandwidth;
 
-        protected HashMap<Short, Peer> peers = new HashMap<Short, Peer>();
+        protected PacketPool packetPool;
+
+        protected CommandDecoder decoder = new CommandDecoder();
+
+        protected PeerTable peers;
+
+        protected HashMap<PeerAddress, Peer> peerAddresses = new HashMap<PeerAddress, Peer>();
+
+        protected PeerAddress peerAddressProbe = new PeerAddress();
 
         protected boolean recalculateBandwithLimits;
 
+        protected Peer sendQueue;
+
+        protected Peer sendQueueTail;
+
         protected InetSocketAddress receivedAddress;
 
+        protected PooledBuffer receivedBuffer;
+
         protected ByteBuffer receivedData;
 
+        protected int receiveBatchSize;
+
+        protected int receiveBatchTime;
+
+        protected BufferPool receiveBuffers;
+
+        /**
+         * The reading of the clock at which this host's time is 0.
+         */
         protected long timeBase;
 
+        protected TimerWheel timers;
+
+        protected Timer bandwidthThrottleTimer = new Timer( null );
+
+        /**
+         * The connected peers and their sort keys while the bandwidth throttle is
+         * recalculated, kept from one recalculation to the next.
+         */
+        protected Peer[] throttlePeers = new Peer[0];
+
+        protected long[] throttleOrder = new long[0];
+
         protected int timeCurrent;
 
+        /**
+         * The time of <code>timeCurrent</code> in microseconds, which wraps around
+         * after about 71 minutes.
+         */
+        protected int timeCurrentMicros;
+
+        /**
+         * The microseconds of <code>timeCurrentMicros</code> past the millisecond
+         * of <code>timeCurrent</code>.
+         */
+        protected int timeCurrentFraction;
+
+        /**
+         * The time in microseconds at which the datagram being handled was read,
+         * taken only when peers may hold acknowledgements.
+         */
+        protected int timeReceivedMicros;
+
+        protected boolean zeroCopy;
+
         /**
          * Creates a new <code>Host</code> object. If the incoming/outgoing
          * bandwidths are not bounded, the host will drop unreliable packets in
@@ -120,7 +192,63 @@ public class Host {
          */
         public Host( InetSocketAddress address, int maxConnections, int incomingBandwith, int outgoingBandwith )
                         throws IOException, ConfigurationException {
+                this( address, maxConnections, incomingBandwith, outgoingBandwith, HostConfig.getDefault() );
+        }
+
+        /**
+         * Creates a new <code>Host</code> object with its own configuration.
+         * 
+         * @see #Host(InetSocketAddress, int, int, int)
+         * @param address
+         *            The to bind this host to or <code>0</code> to get a
+         *            system-assigned address.
+         * @param maxConnections
+         *            The maximum number of peers/connections that this host will be
+         *            able to connect to.
+         * @param incomingBandwith
+         *            The maximum incoming bandwidth in bytes/second (0 =
+         *            unbounded).
+         * @param outgoingBandwith
+         *            The maximum outgoing bandwidth in bytes/second (0 =
+         *            unbounded).
+         * @param config
+         *            The configuration of the host and its peers.
+         * @throws IOException
+         *             if it can not bind the port.
+         */
+        public Host( InetSocketAddress address, int maxConnections, int incomingBandwith, int outgoingBandwith,
+                        HostConfig config ) throws IOException {
+                this( address, maxConnections, incomingBandwith, outgoingBandwith, config, IClock.SYSTEM );
+        }
+
+        /**
+         * Creates a new <code>Host</code> object which takes its time from the
+         * given clock.
+         * 
+         * @see #Host(InetSocketAddress, int, int, int)
+         * @param address
+         *            The to bind this host to or <code>0</code> to get a
+         *            system-assigned address.
+         * @param maxConnections
+         *            The maximum number of peers/connections that this host will be
+         *            able to connect to.
+         * @param incomingBandwith
+         *            The maximum incoming bandwidth in bytes/second (0 =
+         *            unbounded).
+         * @param outgoingBandwith
+         *            The maximum outgoing bandwidth in bytes/second (0 =
+         *            unbounded).
+         * @param config
+         *            The configuration of the host and its peers.
+         * @param clock
+         *            The source of time of the host.
+         * @throws IOException
+         *             if it can not bind the port.
+         */
+        public Host( InetSocketAddress address, int maxConnections, int incomingBandwith, int outgoingBandwith,
+                        HostConfig config, IClock clock ) throws IOException {
                 super();
+                this.clock = clock;
                 communicationChannel = DatagramChannel.open();
                 communicationChannel.configureBlocking( false );
                 communicationChannel.socket().bind( address );
@@ -128,17 +256,24 @@ public class Host {
                 communicationChannel.register( communicationSelector, SelectionKey.OP_READ );
                 LOG.debug( "Host bound to address: " + address );
                 this.address = (InetSocketAddress) communicationChannel.socket().getLocalSocketAddress();
-                initHost( maxConnections, incomingBandwith, outgoingBandwith );
+                initHost( maxConnections, incomingBandwith, outgoingBandwith, config );
         }
 
+        /**
+         * Adds a peer to this host. The peer's address and challenge must be set,
+         * as the peer is indexed by them until it is removed.
+         * 
+         * @param peer
+         *            The peer to add.
+         * @return The incoming ID of the peer, or -1 if the host is full.
+         */
         short assignPeerID( Peer peer ) {
-                for ( short peerID = 0; peerID < maxConnections; peerID++ )
-                        if ( !peers.containsKey( peerID ) ) {
-                                peer.setIncomingPeerID( peerID );
-                                peers.put( peerID, peer );
-                                return peerID;
-                        }
-                return -1;
+                short peerID = peers.add( peer );
+                if ( peerID >= 0 ) {
+                        peer.setIncomingPeerID( peerID );
+                        peerAddresses.put( new PeerAddress( peer.getAddress(), peer.getChallenge() ), peer );
+                }
+                return peerID;
         }
 
         /**
@@ -156,142 +291,156 @@ public class Host {
                 recalculateBandwithLimits = true;
         }
 
+        /**
+         * Divides the outgoing bandwidth of this host among its connected peers,
+         * and, when the limits have changed, tells each peer how much it may send
+         * to this host.
+         * <p>
+         * Both divisions are max-min fair: peers which need less than an even share
+         * get what they need, and what they leave is shared among the rest. Peers
+         * are sorted once by what they need, so a single sweep finds those which
+         * are limited by themselves and the share left for the others.
+         */
         void bandwidthThrottle() {
-                int timeCurrent = getTime();
                 int elapsedTime = timeCurrent - bandwidthThrottleEpoch;
                 int peersTotal = 0;
-                int dataTotal = 0;
-                int peersRemaining = 0;
-                int bandwidth = 0;
-                int throttle = 0;
-                int bandwidthLimit = 0;
-                boolean needsAdjustment = false;
-                BandwidthLimit command = new BandwidthLimit();
-
-                if ( elapsedTime < configuration.getInt( "ENET_HOST_BANDWIDTH_THROTTLE_INTERVAL" ) )
+                long dataTotal = 0;
+                long bandwidth;
+                int throttle;
+                int i;
+
+                if ( elapsedTime < config.bandwidthThrottleInterval )
                         return;
 
-                for ( Peer peer : peers.values() )
-                        if ( peer.isConnected() ) {
-                                ++peersTotal;
-                                dataTotal += peer.getOutgoingDataTotal();
+                if ( throttlePeers.length < peers.size() ) {
+                        throttlePeers = new Peer[peers.size()];
+                        throttleOrder = new long[peers.size()];
+                }
+
+                for ( Peer currentPeer : peers.values() )
+                        if ( currentPeer.isConnected() ) {
+                                throttlePeers[peersTotal++] = currentPeer;
+                                dataTotal += currentPeer.getOutgoingDataTotal();
                         }
 
                 if ( peersTotal == 0 )
                         return;
 
-                peersRemaining = peersTotal;
-                needsAdjustment = true;
-
                 if ( outgoingBandwidth == 0 )
-                        bandwidth = 0;
+                        bandwidth = Long.MAX_VALUE;
                 else
-                        bandwidth = outgoingBandwidth * elapsedTime / 1000;
-
-                while ( peersRemaining > 0 && needsAdjustment ) {
-                        needsAdjustment = false;
-                        if ( dataTotal < bandwidth )
-                                throttle = bandwidth * configuration.getInt( "ENET_PEER_PACKET_THROTTLE_SCALE" ) / dataTotal;
+                        bandwidth = (long) outgoingBandwidth * elapsedTime / 1000;
 
-                        for ( Peer peer : peers.values() ) {
-                                int peerBandwidth;
-
-                                if ( !peer.isConnected() || peer.getIncomingBandwidth() == 0
-                                                || peer.getOutgoingBandwidthThrottleEpoch() == timeCurrent )
-                                        continue;
-
-                                peerBandwidth = peer.getIncomingBandwidth() * elapsedTime / 1000;
-
-                                if ( throttle * peer.getOutgoingDataTotal()
-                                                / configuration.getInt( "ENET_PEER_PACKET_THROTTLE_SCALE" ) >= peerBandwidth )
-                                        continue;
-
-                                peer.setPacketThrottleLimit( peerBandwidth
-                                                * configuration.getInt( "ENET_PEER_PACKET_THROTTLE_SCALE" )
-                                                / peer.getOutgoingDataTotal() );
-
-                                if ( peer.getPacketThrottleLimit() == 0 )
-                                        peer.setPacketThrottleLimit( 1 );
-
-                                if ( peer.getPacketThrottle() > peer.getPacketThrottleLimit() )
-                                        peer.setPacketThrottle( peer.getPacketThrottleLimit() );
-
-                                peer.setOutgoingBandwidthThrottleEpoch( timeCurrent );
+                /*
+                 * A peer's key is the largest throttle its incoming bandwidth allows for
+                 * the data sent to it, in the upper half, and its index in the lower
+                 * half. Peers not limited by their own bandwidth sort last.
+                 */
+                for ( i = 0; i < peersTotal; i++ ) {
+                        Peer currentPeer = throttlePeers[i];
+                        long limit = config.packetThrottleScale;
+
+                        if ( currentPeer.getIncomingBandwidth() != 0 && currentPeer.getOutgoingDataTotal() != 0 )
+                                limit = Math.min( limit, peerBandwidth( currentPeer, elapsedTime )
+                                                * config.packetThrottleScale / currentPeer.getOutgoingDataTotal() );
+                        throttleOrder[i] = limit << 32 | i;
+                }
+                Arrays.sort( throttleOrder, 0, peersTotal );
+
+                throttle = config.packetThrottleScale;
+                for ( i = 0; i < peersTotal; i++ ) {
+                        /*
+                         * Once the peers limited by their own bandwidth are taken out, the
+                         * data left may fit, and the others are not throttled at all.
+                         */
+                        if ( dataTotal > bandwidth )
+                                throttle = (int) ( bandwidth * config.packetThrottleScale / dataTotal );
+                        else
+                                throttle = config.packetThrottleScale;
 
-                                needsAdjustment = true;
+                        int limit = (int) ( throttleOrder[i] >>> 32 );
+                        if ( limit >= throttle )
+                                break;
 
-                                --peersRemaining;
+                        Peer currentPeer = throttlePeers[(int) throttleOrder[i]];
+                        currentPeer.setPacketThrottleLimit( Math.max( limit, 1 ) );
+                        if ( currentPeer.getPacketThrottle() > currentPeer.getPacketThrottleLimit() )
+                                currentPeer.setPacketThrottle( currentPeer.getPacketThrottleLimit() );
+                        currentPeer.setOutgoingBandwidthThrottleEpoch( timeCurrent );
 
-                                bandwidth -= peerBandwidth;
-                                dataTotal -= peerBandwidth;
-                        }
+                        bandwidth = Math.max( 0, bandwidth - peerBandwidth( currentPeer, elapsedTime ) );
+                        dataTotal -= currentPeer.getOutgoingDataTotal();
                 }
 
-                if ( peersRemaining > 0 ) {
-                        for ( Peer peer : peers.values() ) {
-                                if ( !peer.isConnected() || peer.getOutgoingBandwidthThrottleEpoch() == timeCurrent )
-                                        continue;
-
-                                peer.setPacketThrottleLimit( throttle );
-
-                                if ( peer.getPacketThrottle() > peer.getPacketThrottleLimit() )
-                                        peer.setPacketThrottle( peer.getPacketThrottleLimit() );
-                        }
+                for ( ; i < peersTotal; i++ ) {
+                        Peer currentPeer = throttlePeers[(int) throttleOrder[i]];
+                        currentPeer.setPacketThrottleLimit( throttle );
+                        if ( currentPeer.getPacketThrottle() > currentPeer.getPacketThrottleLimit() )
+                                currentPeer.setPacketThrottle( currentPeer.getPacketThrottleLimit() );
                 }
 
                 if ( recalculateBandwithLimits ) {
-                        recalculateBandwithLimits = false;
+                        int bandwidthLimit = 0;
+                        int limitedPeers = 0;
 
-                        peersRemaining = peersTotal;
-
-                        bandwidth = incomingBandwidth;
-                        needsAdjustment = true;
-
-                        if ( bandwidth == 0 )
-                                bandwidthLimit = 0;
-                        else
-                                while ( peersRemaining > 0 && needsAdjustment ) {
-                                        for ( Peer peer : peers.values() ) {
-                                                if ( !peer.isConnected() || peer.getIncomingBandwidthThrottleEpoch() == timeCurrent )
-                                                        continue;
-
-                                                if ( peer.getOutgoingBandwidth() > 0
-                                                                && bandwidthLimit > peer.getIncomingBandwidthThrottleEpoch() )
-                                                        continue;
-
-                                                peer.setIncomingBandwidthThrottleEpoch( timeCurrent );
+                        recalculateBandwithLimits = false;
 
-                                                needsAdjustment = true;
-                                                --peersRemaining;
-                                                bandwidth -= peer.getOutgoingBandwidth();
-                                        }
+                        /*
+                         * Peers which send less than an even share of the incoming bandwidth
+                         * are left at their own rate, sorting first; peers sending without
+                         * limit sort last.
+                         */
+                        for ( i = 0; i < peersTotal; i++ ) {
+                                long limit = throttlePeers[i].getOutgoingBandwidth();
+                                throttleOrder[i] = ( limit == 0 ? Integer.MAX_VALUE : limit ) << 32 | i;
+                        }
+                        Arrays.sort( throttleOrder, 0, peersTotal );
+
+                        if ( incomingBandwidth != 0 ) {
+                                bandwidth = incomingBandwidth;
+                                for ( ; limitedPeers < peersTotal; limitedPeers++ ) {
+                                        Peer currentPeer = throttlePeers[(int) throttleOrder[limitedPeers]];
+                                        bandwidthLimit = (int) ( bandwidth / ( peersTotal - limitedPeers ) );
+                                        if ( currentPeer.getOutgoingBandwidth() == 0
+                                                        || currentPeer.getOutgoingBandwidth() >= bandwidthLimit )
+                                                break;
+                                        currentPeer.setIncomingBandwidthThrottleEpoch( timeCurrent );
+                                        bandwidth -= currentPeer.getOutgoingBandwidth();
                                 }
+                        }
 
-                        for ( Peer peer : peers.values() ) {
-                                if ( !peer.isConnected() )
-                                        continue;
+                        for ( i = 0; i < peersTotal; i++ ) {
+                                Peer currentPeer = throttlePeers[(int) throttleOrder[i]];
+                                BandwidthLimit command = new BandwidthLimit();
 
                                 command.getHeader().setChannelID( (byte) 0xFF );
                                 command.getHeader().setFlags( Header.FLAG_ACKNOWLEDGE );
                                 command.setOutgoingBandwidth( outgoingBandwidth );
-
-                                if ( peer.getIncomingBandwidthThrottleEpoch() == timeCurrent )
-                                        command.setIncomingBandwidth( peer.getOutgoingBandwidth() );
+                                if ( i < limitedPeers )
+                                        command.setIncomingBandwidth( currentPeer.getOutgoingBandwidth() );
                                 else
                                         command.setIncomingBandwidth( bandwidthLimit );
 
-                                peer.queueOutgoingCommand( command, null, 0, (short) 0 );
+                                currentPeer.queueOutgoingCommand( command, null, 0, (short) 0 );
                         }
                 }
 
+                Arrays.fill( throttlePeers, 0, peersTotal, null );
                 bandwidthThrottleEpoch = timeCurrent;
 
-                for ( Peer peer : peers.values() ) {
-                        peer.setIncomingDataTotal( 0 );
-                        peer.setOutgoingDataTotal( 0 );
+                for ( Peer currentPeer : peers.values() ) {
+                        currentPeer.setIncomingDataTotal( 0 );
+                        currentPeer.setOutgoingDataTotal( 0 );
                 }
         }
 
+        /**
+         * @return The number of bytes a peer accepts over an interval.
+         */
+        private static long peerBandwidth( Peer peer, int elapsedTime ) {
+                return (long) peer.getIncomingBandwidth() * elapsedTime / 1000;
+        }
+
         /**
          * Broadcasts a packet to all the connected peers.
          * 
@@ -308,15 +457,82 @@ public class Host {
                                 currentPeer.send( channelID, packet );
         }
 
+        /**
+         * Counts a command buffered in the datagram being built.
+         */
+        void countCommand() {
+                commandCount++;
+        }
+
         void buffer( IBufferable object ) {
                 LOG.debug( address + ": Buffering object: \n" + object );
                 object.toBuffer( buffers );
                 bufferCount++;
         }
 
+        /**
+         * Encodes an acknowledgement in the datagram being built.
+         * 
+         * @param channelID
+         *            The channel of the command acknowledged.
+         * @param reliableSequenceNumber
+         *            The sequence number of the command acknowledged.
+         * @param sentTime
+         *            The time at which the command acknowledged was sent.
+         */
+        void bufferAcknowledgement( byte channelID, int reliableSequenceNumber, int sentTime ) {
+                Acknowledge.toBuffer( buffers, channelID, reliableSequenceNumber, sentTime );
+                bufferCount++;
+        }
+
+        /**
+         * Encodes a selective acknowledgement in the datagram being built.
+         * 
+         * @param channelID
+         *            The channel of the commands acknowledged.
+         * @param reliableSequenceNumber
+         *            The sequence number of the first command acknowledged.
+         * @param mask
+         *            The commands acknowledged after the first.
+         * @param sentTime
+         *            The time at which the commands acknowledged were sent.
+         */
+        void bufferSelectiveAcknowledgement( byte channelID, int reliableSequenceNumber, int mask, int sentTime ) {
+                SelectiveAcknowledge.toBuffer( buffers, channelID, reliableSequenceNumber, mask, sentTime );
+                bufferCount++;
+        }
+
+        /**
+         * Buffers an outgoing command and its payload in the datagram being built.
+         * Reliable commands are encoded once and copied when retransmitted, unless
+         * {@link HostConfig#isCacheEncodedCommands} is off.
+         * 
+         * @param command
+         *            The command to buffer.
+         */
         void buffer( OutgoingCommand command ) {
-                command.getCommand().getHeader().setCommandLength( command.byteSize() );
-                buffer( command.getCommand() );
+                ByteBuffer encodedCommand = command.encodedCommand;
+
+                if ( encodedCommand != null && encodedCommand.limit() > 0 ) {
+                        encodedCommand.rewind();
+                        buffers.put( encodedCommand );
+                        bufferCount++;
+                } else if ( config.cacheEncodedCommands
+                                && ( command.getCommand().getHeader().getFlags() & Header.FLAG_ACKNOWLEDGE ) != 0 ) {
+                        command.getCommand().getHeader().setCommandLength( command.byteSize() );
+                        if ( encodedCommand == null || encodedCommand.capacity() < command.getCommand().byteSize() ) {
+                                encodedCommand = ByteBuffer.allocate( command.getCommand().byteSize() );
+                                command.encodedCommand = encodedCommand;
+                        }
+                        encodedCommand.clear();
+                        command.getCommand().toBuffer( encodedCommand );
+                        encodedCommand.flip();
+                        buffers.put( encodedCommand );
+                        bufferCount++;
+                } else {
+                        command.getCommand().getHeader().setCommandLength( command.byteSize() );
+                        buffer( command.getCommand() );
+                }
                 if ( command.getPacket() != null ) {
                         LOG.debug( address + ": Buffering object: \n" + command.getPacket() );
                         command.getPacket().toBuffer( buffers, command.getFragmentOffset(), command.getFragmentLength() );
@@ -324,6 +540,26 @@ public class Host {
                 }
         }
 
+        /**
+         * Builds the packet for a payload of the datagram being handled. Depending
+         * on {@link #setZeroCopy} the packet is either a view over the received
+         * datagram or a copy of the payload.
+         * 
+         * @param dataLength
+         *            The size of the payload.
+         * @param flags
+         *            The flags of the packet.
+         * @return The packet holding the payload.
+         */
+        Packet createIncomingPacket( int dataLength, int flags ) {
+                if ( zeroCopy )
+                        return Packet.view( receivedBuffer, dataLength, flags );
+
+                Packet packet = packetPool.acquire( dataLength, flags );
+                packet.fromBuffer( receivedData );
+                return packet;
+        }
+
         /**
          * Initiates a connection to a foreign host. Subsequent calls to
          * {@link #service} will take care of any further handshaking.
@@ -335,10 +571,10 @@ public class Host {
          * @return A {@link net.jenet.Peer} object representing the foreign host.
          */
         public Peer connect( InetSocketAddress address, int channelCount ) {
-                if ( channelCount < configuration.getInt( "ENET_PROTOCOL_MINIMUM_CHANNEL_COUNT" ) )
-                        channelCount = configuration.getInt( "ENET_PROTOCOL_MINIMUM_CHANNEL_COUNT" );
-                else if ( channelCount > configuration.getInt( "ENET_PROTOCOL_MAXIMUM_CHANNEL_COUNT" ) )
-                        channelCount = configuration.getInt( "ENET_PROTOCOL_MAXIMUM_CHANNEL_COUNT" );
+                if ( channelCount < config.minimumChannelCount )
+                        channelCount = config.minimumChannelCount;
+                else if ( channelCount > config.maximumChannelCount )
+                        channelCount = config.maximumChannelCount;
 
                 if ( peers.size() >= maxConnections )
                         return null;
@@ -349,6 +585,7 @@ public class Host {
                 Connect connect = new Connect();
                 connect.getHeader().setChannelID( (byte) 0xFF );
                 connect.getHeader().setFlags( Header.FLAG_ACKNOWLEDGE );
+                connect.getHeader().setReserved( getCapabilities() );
                 connect.setOutgoingPeerID( currentPeer.getIncomingPeerID() );
                 connect.setMtu( currentPeer.getMtu() );
                 connect.setWindowSize( currentPeer.getWindowSize() );
@@ -369,65 +606,86 @@ public class Host {
          */
         public void destroy() throws IOException {
                 communicationChannel.close();
+                communicationSelector.close();
         }
 
         Event dispatchIncomingCommands() {
-                Event result = new Event();
-                Peer currentPeer;
-
-                LinkedList<Peer> peersList = new LinkedList<Peer>( peers.values() );
-
-                if ( peers.size() == 0 )
-                        return result;
+                return dispatchIncomingCommands( new Event() );
+        }
 
-                /* 
-                 * Simply calling containsKey( lastServicedPeer.getIncomingPeerId() ) will 
-                 * not be sufficient because the peerID of lastServicedPeer may have been 
-                 * reassigned.  The get operation is quicker than containsValue because 
-                 * it does not have to search through all the peers. 
-                 * 
-                 * lastServicedPeer.isDisconnected() may be sufficient, but this feels more robust.
-                 */
-                if ( lastServicedPeer == null || peers.get( lastServicedPeer.getIncomingPeerID() ) != lastServicedPeer )
-                        lastServicedPeer = peersList.getFirst();
+        /**
+         * Adds a peer to the dispatch queue, unless it is already queued. Peers are
+         * queued when they receive a command to deliver or become zombies, so
+         * that dispatching only visits peers which may have an event.
+         * 
+         * @param peer
+         *            The peer to queue.
+         */
+        void queueDispatch( Peer peer ) {
+                if ( peer.needsDispatch )
+                        return;
+                peer.needsDispatch = true;
+                peer.nextDispatch = null;
+                if ( dispatchQueueTail == null )
+                        dispatchQueue = peer;
                 else
-                        while ( peersList.getLast() != lastServicedPeer )
-                                peersList.addLast( peersList.removeFirst() );
+                        dispatchQueueTail.nextDispatch = peer;
+                dispatchQueueTail = peer;
+        }
 
-                do {
-                        currentPeer = peersList.removeFirst();
-                        peersList.addLast( currentPeer );
+        /**
+         * Delivers the next packet ready on a queued peer, or the disconnection of
+         * a zombie peer.
+         * 
+         * @param result
+         *            An empty event to fill in.
+         * @return The given event, which is left untouched if nothing was ready.
+         */
+        Event dispatchIncomingCommands( Event result ) {
+                Peer currentPeer;
+
+                while ( dispatchQueue != null ) {
+                        currentPeer = dispatchQueue;
+                        dispatchQueue = currentPeer.nextDispatch;
+                        if ( dispatchQueue == null )
+                                dispatchQueueTail = null;
+                        currentPeer.nextDispatch = null;
+                        currentPeer.needsDispatch = false;
 
                         if ( currentPeer.isZombie() ) {
                                 recalculateBandwithLimits = true;
                                 currentPeer.reset();
                                 result.setType( Event.TYPE.DISCONNECTED );
                                 result.setPeer( currentPeer );
-                                lastServicedPeer = currentPeer;
                                 return result;
                         }
 
                         if ( !currentPeer.isConnected() )
                                 continue;
 
-                        for ( byte channelID : currentPeer.getChannels().keySet() ) {
-                                Channel channel = currentPeer.getChannels().get( channelID );
-                                if ( channel.getIncomingReliableCommands().isEmpty()
-                                                && channel.getIncomingUnreliableCommands().isEmpty() )
-                                        continue;
-                                Packet packet = currentPeer.receive( channelID );
-                                result.setPacket( packet );
-                                if ( packet == null )
-                                        continue;
-                                result.setType( Event.TYPE.RECEIVED );
-                                result.setPeer( currentPeer );
-                                result.setChannelID( channelID );
-                                result.setPacket( packet );
-                                lastServicedPeer = currentPeer;
+                        long[] incomingChannels = currentPeer.incomingChannels;
+                        for ( int word = 0; word < incomingChannels.length; word++ )
+                                for ( long bits = incomingChannels[word]; bits != 0; bits &= bits - 1 ) {
+                                        byte channelID = (byte) ( ( word << 6 ) + Long.numberOfTrailingZeros( bits ) );
+                                        Packet packet = currentPeer.receive( channelID );
+                                        result.setPacket( packet );
+                                        if ( packet == null )
+                                                continue;
+                                        result.setType( Event.TYPE.RECEIVED );
+                                        result.setPeer( currentPeer );
+                                        result.setChannelID( channelID );
+                                        result.setPacket( packet );
+
+                                        /*
+                                         * Peers with more to deliver go back to the end of the queue,
+                                         * so that ready peers are served round robin.
+                                         */
+                                        if ( currentPeer.hasIncomingCommands() )
+                                                queueDispatch( currentPeer );
 
-                                return result;
-                        }
-                } while ( currentPeer != lastServicedPeer );
+                                        return result;
+                                }
+                }
 
                 return result;
         }
@@ -436,7 +694,7 @@ public class Host {
          * Sends all pending messages to all the peers.
          */
         public void flush() {
-                timeCurrent = getTime();
+                updateTime();
                 sendOutgoingCommands( false );
         }
 
@@ -460,18 +718,21 @@ public class Host {
          * @return Returns the buffers.
          */
         int getCommandCount() {
-                return commands.size();
+                return commandCount;
         }
 
-        ConcurrentLinkedQueue<Command> getCommands() {
-                return commands;
+        /**
+         * @return Returns the pool of command records.
+         */
+        CommandPool getCommandPool() {
+                return commandPool;
         }
 
         /**
          * @return Returns the configuration.
          */
-        PropertiesConfiguration getConfiguration() {
-                return configuration;
+        public HostConfig getConfig() {
+                return config;
         }
 
         /**
@@ -517,14 +778,56 @@ public class Host {
         }
 
         /**
-         * The peers to which this host is connected.
+         * The pool from which this host takes the packets it receives. Packets to
+         * be sent may be taken from it as well to avoid allocating them.
+         * 
+         * @return Returns the packetPool.
+         */
+        public PacketPool getPacketPool() {
+                return packetPool;
+        }
+
+        /**
+         * The peers to which this host is connected, by incoming peer ID. The map
+         * is a read-only view which follows the peers of this host.
          * 
          * @return Returns the peers.
          */
-        public HashMap<Short, Peer> getPeers() {
+        public Map<Short, Peer> getPeers() {
                 return peers;
         }
 
+        /**
+         * Removes a peer from this host, freeing its ID.
+         * 
+         * @param peer
+         *            The peer to remove.
+         * @return Whether the peer belonged to this host.
+         */
+        boolean removePeer( Peer peer ) {
+                timers.cancel( peer.timer );
+                if ( !peers.remove( peer ) )
+                        return false;
+                peerAddressProbe.set( peer.getAddress(), peer.getChallenge() );
+                if ( peerAddresses.get( peerAddressProbe ) == peer )
+                        peerAddresses.remove( peerAddressProbe );
+                return true;
+        }
+
+        /**
+         * Looks a peer up by the address and challenge of its connection.
+         * 
+         * @param address
+         *            The address of the foreign host.
+         * @param challenge
+         *            The challenge of the connection.
+         * @return The peer, or null if this host has none for that connection.
+         */
+        Peer findPeer( InetSocketAddress address, int challenge ) {
+                peerAddressProbe.set( address, challenge );
+                return peerAddresses.get( peerAddressProbe );
+        }
+
         /**
          * @return Returns the receivedAddress.
          */
@@ -532,6 +835,33 @@ public class Host {
                 return receivedAddress;
         }
 
+        /**
+         * The maximum number of datagrams read from the socket in a single
+         * service pass, or <code>0</code> to stop at the first event.
+         * 
+         * @return Returns the receiveBatchSize.
+         */
+        public int getReceiveBatchSize() {
+                return receiveBatchSize;
+        }
+
+        /**
+         * The maximum time in microseconds spent reading datagrams in a single
+         * service pass, or <code>0</code> for no time limit.
+         * 
+         * @return Returns the receiveBatchTime.
+         */
+        public int getReceiveBatchTime() {
+                return receiveBatchTime;
+        }
+
+        /**
+         * @return Returns the buffer holding receivedData.
+         */
+        PooledBuffer getReceivedBuffer() {
+                return receivedBuffer;
+        }
+
         /**
          * @return Returns the receivedData.
          */
@@ -540,14 +870,74 @@ public class Host {
         }
 
         /**
-         * @return The time elapsed in milliseconds.
+         * The number of datagrams received into a buffer taken from the receive
+         * buffer pool.
+         * 
+         * @return Returns the receive buffer pool hits.
+         */
+        public long getReceiveBufferHits() {
+                return receiveBuffers.getHits();
+        }
+
+        /**
+         * The number of datagrams for which a new receive buffer had to be
+         * allocated because the pool was empty.
+         * 
+         * @return Returns the receive buffer pool misses.
+         */
+        public long getReceiveBufferMisses() {
+                return receiveBuffers.getMisses();
+        }
+
+        /**
+         * Reads the clock into <code>timeCurrent</code>, in milliseconds since this
+         * host was created, and <code>timeCurrentMicros</code>. The rest of the
+         * operation uses these readings.
+         */
+        void updateTime() {
+                long elapsed = clock.nanoTime() - timeBase;
+                timeCurrent = (int) ( elapsed / 1000000L );
+                timeCurrentMicros = (int) ( elapsed / 1000L );
+                timeCurrentFraction = (int) ( elapsed / 1000L % 1000 );
+        }
+
+        /**
+         * Finds the millisecond, on the clock of <code>timeCurrent</code>, by which
+         * a time in microseconds has passed. Timers run in milliseconds, so a
+         * deadline in microseconds is rounded up to the next one.
+         * 
+         * @param micros
+         *            A time on the clock of <code>timeCurrentMicros</code>.
+         * @return The first millisecond at or after <code>micros</code>, or
+         *         <code>timeCurrent</code> if it has already passed.
+         */
+        int timerDeadline( int micros ) {
+                int delay = micros - timeCurrentMicros + timeCurrentFraction;
+
+                if ( delay <= 0 )
+                        return timeCurrent;
+                return timeCurrent + ( delay + 999 ) / 1000;
+        }
+
+        /**
+         * @return The capabilities this host announces when connecting, from the
+         *         <code>CommandHeader.CAPABILITY_*</code> bits.
          */
+        byte getCapabilities() {
+                byte capabilities = 0;
+
+                if ( config.highResolutionTiming )
+                        capabilities |= CommandHeader.CAPABILITY_HIGH_RESOLUTION_TIMING;
+                if ( config.selectiveAcknowledgements )
+                        capabilities |= CommandHeader.CAPABILITY_SELECTIVE_ACKNOWLEDGEMENT;
+                return capabilities;
+        }
 
         /**
-         * @return The system's time
+         * @return Returns the clock.
          */
-        int getTime() {
-                return (int) ( System.currentTimeMillis() - timeBase );
+        public IClock getClock() {
+                return clock;
         }
 
         /**
@@ -566,6 +956,29 @@ public class Host {
                 return timeCurrent;
         }
 
+        /**
+         * @return Returns the timeCurrentMicros.
+         */
+        int getTimeCurrentMicros() {
+                return timeCurrentMicros;
+        }
+
+        /**
+         * @return Returns the timeReceivedMicros.
+         */
+        int getTimeReceivedMicros() {
+                return timeReceivedMicros;
+        }
+
+        /**
+         * @return The current time in the unit in which this host stamps its sent
+         *         times: microseconds in high resolution timing, milliseconds
+         *         otherwise.
+         */
+        int getTimeStamp() {
+                return config.highResolutionTiming ? timeCurrentMicros : timeCurrent;
+        }
+
         /**
          * Executes received command
          * @return
@@ -573,15 +986,14 @@ public class Host {
         private Event handleIncomingCommands() {
                 Event result = new Event();
                 Command command;
-                Header header = new Header();
+                Header header = decoder.readHeader( receivedData );
                 Peer peer;
 
-                if ( receivedData.limit() < header.byteSize() )
+                if ( header == null )
                         return result;
 
-                header.fromBuffer( receivedData );
-
-                LOG.debug( address + ": Parsed header: \n" + header );
+                if ( LOG.isDebugEnabled() )
+                        LOG.debug( address + ": Parsed header: \n" + header );
 
                 if ( header.getPeerID() == (short) 0xFFFF )
                         peer = null;
@@ -599,29 +1011,45 @@ public class Host {
                 if ( peer != null )
                         peer.setIncomingDataTotal( peer.getIncomingDataTotal() + receivedData.limit() );
 
+                /*
+                 * Read after the datagram arrived, so the time its acknowledgements
+                 * are held is never overestimated.
+                 */
+                if ( config.acknowledgementDelay > 0 )
+                        timeReceivedMicros = (int) ( ( clock.nanoTime() - timeBase ) / 1000L );
+
                 int commandCount = header.getCommandCount();
 
                 while ( commandCount > 0 && receivedData.position() < receivedData.limit() ) {
-                        command = Command.readCommand( receivedData );
-                        LOG.debug( address + ": Parsed Command: \n" + command );
+                        int commandStart = receivedData.position();
+                        command = decoder.readCommand( receivedData );
 
                         if ( command == null )
                                 return result;
 
+                        int commandEnd = commandStart + command.getHeader().getCommandLength();
+                        if ( command.getHeader().getCommandLength() < command.byteSize() || commandEnd > receivedData.limit() )
+                                return result;
+
+                        if ( LOG.isDebugEnabled() )
+                                LOG.debug( address + ": Parsed Command: \n" + command );
+
                         commandCount--;
 
                         if ( peer == null )
-                                if ( !( command instanceof Connect ) )
+                                if ( command.getCode() != Command.CONNECT )
                                         return result;
 
-                        LOG.debug( address + " executing command " + command.getClass() );
+                        if ( LOG.isDebugEnabled() )
+                                LOG.debug( address + " executing command " + command.getClass() );
                         Event event = command.execute( this, peer, header );
-                        LOG.debug( address + " command execution ended " + command.getClass() );
+                        if ( LOG.isDebugEnabled() )
+                                LOG.debug( address + " command execution ended " + command.getClass() );
                         
                         if ( event.type != Event.TYPE.NONE )
                                 result = event;
                         
-                        if ( command instanceof Connect )
+                        if ( command.getCode() == Command.CONNECT )
                                 peer = event.getPeer();
 
                         if ( peer != null && ( command.getHeader().getFlags() & Header.FLAG_ACKNOWLEDGE ) != 0 ) {
@@ -629,7 +1057,7 @@ public class Host {
                                 case DISCONNECTING:
                                         break;
                                 case ACKNOWLEDGING_DISCONNECT:
-                                        if ( !( command instanceof Disconnect ) )
+                                        if ( command.getCode() != Command.DISCONNECT )
                                                 break;
 
                                 default:
@@ -637,32 +1065,58 @@ public class Host {
                                         break;
                                 }
                         }
+
+                        /*
+                         * Commands which are dropped do not read their payload, so the
+                         * next command is found from this one's length.
+                         */
+                        receivedData.position( commandEnd );
                 }
 
                 return result;
         }
 
-        void initHost( int maxConnections, int incomingBandwith, int outgoingBandwith )
-                        throws ConfigurationException {
+        void initHost( int maxConnections, int incomingBandwith, int outgoingBandwith, HostConfig config ) {
+                this.config = config;
                 this.maxConnections = maxConnections;
                 this.incomingBandwidth = incomingBandwith;
                 this.outgoingBandwidth = outgoingBandwith;
 
-                lastServicedPeer = null;
-
-                configuration = new PropertiesConfiguration( "enet.properties" );
+                dispatchQueue = null;
+                dispatchQueueTail = null;
+                sendQueue = null;
+                sendQueueTail = null;
 
-                peers = new HashMap<Short, Peer>();
+                peers = new PeerTable( maxConnections );
+                peerAddresses.clear();
 
+                timeBase = clock.nanoTime();
+                timeCurrent = 0;
                 bandwidthThrottleEpoch = 0;
+                timers = new TimerWheel( timeCurrent );
                 recalculateBandwithLimits = false;
-                mtu = configuration.getShort( "ENET_HOST_DEFAULT_MTU" );
+                mtu = (short) config.defaultMtu;
                 receivedAddress = new InetSocketAddress( (InetAddress) null, 0 );
+                receiveBuffers = new BufferPool( mtu, config.receiveBufferPoolSize );
+                receiveBatchSize = config.receiveBatchSize;
+                receiveBatchTime = config.receiveBatchTime;
+                zeroCopy = config.zeroCopy;
+                packetPool = new PacketPool( config.packetPoolDirect, config.packetPoolSlabSize );
                 buffers = ByteBuffer.allocateDirect( mtu );
                 buffers.clear();
                 bufferCount = 0;
         }
 
+        /**
+         * Returns true if received packets are delivered as zero-copy views.
+         * 
+         * @see #setZeroCopy
+         * @return Returns the zeroCopy.
+         */
+        public boolean isZeroCopy() {
+                return zeroCopy;
+        }
+
         /**
          * @param buffer
          * @return
@@ -683,30 +1137,68 @@ public class Host {
         }
 
         /**
-         * Reads data from socket and calls handleIncomingCommands
+         * Reads data from socket and calls handleIncomingCommands. If a receive
+         * budget has been set, every datagram within the budget is decoded before
+         * returning and the events they produce are queued to be returned by
+         * later calls to {@link #service}.
          */
         Event receiveIncomingCommands() {
                 Event result = new Event();
+                int datagramCount = 0;
+                long deadline = 0;
+
+                if ( receiveBatchTime > 0 )
+                        deadline = clock.nanoTime() + receiveBatchTime * 1000L;
+
                 for ( ;; ) {
-                        receivedData = ByteBuffer.allocateDirect( mtu );
+                        receivedBuffer = receiveBuffers.acquire();
+                        receivedData = receivedBuffer.getData();
 
                         int receivedLength = receive( receivedData );
 
                         if ( receivedLength < 0 ) {
+                                releaseReceivedData();
                                 result.setType( Event.TYPE.ERROR );
                                 return result;
                         }
 
                         if ( receivedLength == 0 ) {
-                                result.setType( Event.TYPE.NONE );
-                                return result;
+                                releaseReceivedData();
+                                break;
                         }
 
                         result = handleIncomingCommands();
+                        releaseReceivedData();
 
-                        if ( result.getType() != Event.TYPE.NONE )
-                                return result;
+                        if ( receiveBatchSize == 0 ) {
+                                if ( result.getType() != Event.TYPE.NONE )
+                                        return result;
+                        } else {
+                                if ( result.getType() != Event.TYPE.NONE )
+                                        events.add( result );
+
+                                if ( ++datagramCount >= receiveBatchSize )
+                                        break;
+                        }
+
+                        if ( deadline != 0 && clock.nanoTime() - deadline >= 0 )
+                                break;
                 }
+
+                result = events.poll();
+                if ( result == null )
+                        result = new Event();
+                return result;
+        }
+
+        /**
+         * Drops the host's reference to the last received datagram. The buffer goes
+         * back to the receive pool unless a command still holds it.
+         */
+        void releaseReceivedData() {
+                receivedBuffer.release();
+                receivedBuffer = null;
+                receivedData = null;
         }
 
         // enet_socket_send
@@ -721,95 +1213,256 @@ public class Host {
                 }
         }
 
+        /**
+         * Adds a peer to the send queue, unless it is already queued. Peers are
+         * queued when they have acknowledgements or commands to send, or when
+         * their timer is due, so that sending only visits peers which may have
+         * something to send.
+         * 
+         * @param peer
+         *            The peer to queue.
+         */
+        void queueSend( Peer peer ) {
+                if ( peer.needsSend )
+                        return;
+                peer.needsSend = true;
+                peer.nextSend = null;
+                if ( sendQueueTail == null )
+                        sendQueue = peer;
+                else
+                        sendQueueTail.nextSend = peer;
+                sendQueueTail = peer;
+        }
+
+        /**
+         * Runs the timers which are due: peers whose timer is due are queued for
+         * sending, where their retransmissions and pings are handled, and the
+         * bandwidth throttle is recalculated when its interval has elapsed.
+         */
+        void expireTimers() {
+                Timer timer = timers.expire( timeCurrent );
+                Timer nextTimer;
+
+                while ( timer != null ) {
+                        nextTimer = timer.next;
+                        timer.next = null;
+                        if ( timer.getPeer() != null )
+                                queueSend( timer.getPeer() );
+                        else if ( timer == bandwidthThrottleTimer ) {
+                                int epoch = bandwidthThrottleEpoch;
+                                bandwidthThrottle();
+                                if ( bandwidthThrottleEpoch != epoch )
+                                        scheduleBandwidthThrottle();
+                        }
+                        timer = nextTimer;
+                }
+        }
+
+        /**
+         * Sets the bandwidth throttle timer to the end of the current interval,
+         * unless it is already set. The throttle only starts a new interval while
+         * there are connected peers, so once they are gone the timer is left off
+         * until a peer connects. An epoch which {@link Time#difference} places
+         * after the current time is never due.
+         */
+        void scheduleBandwidthThrottle() {
+                int elapsed = Time.difference( timeCurrent, bandwidthThrottleEpoch );
+
+                if ( bandwidthThrottleTimer.isScheduled() || elapsed < 0 )
+                        return;
+                timers.schedule( bandwidthThrottleTimer, timeCurrent + config.bandwidthThrottleInterval - elapsed );
+        }
+
+        /**
+         * Sets a peer's timer to its next retransmission timeout or, if it has no
+         * reliable command in flight and is connected, to its next ping. Held
+         * acknowledgements bring the timer forward to when they are due.
+         * 
+         * @param peer
+         *            The peer.
+         */
+        void scheduleTimer( Peer peer ) {
+                int deadline;
+
+                if ( peer.isDisconnected() || peer.isZombie() ) {
+                        timers.cancel( peer.timer );
+                        return;
+                }
+                if ( !peer.getSentReliableCommands().isEmpty() )
+                        deadline = peer.getNextTimeout();
+                else if ( peer.isConnected() )
+                        deadline = peer.getLastReceiveTime() + config.pingInterval;
+                else {
+                        timers.cancel( peer.timer );
+                        return;
+                }
+                if ( peer.getAcknowledgementCount() > 0
+                                && Time.less( peer.getAcknowledgementTime() + config.acknowledgementDelay, deadline ) )
+                        deadline = peer.getAcknowledgementTime() + config.acknowledgementDelay;
+
+                /*
+                 * A peer which could not act on a passed deadline, such as a ping
+                 * which does not fit, is retried on the next millisecond rather than
+                 * straight away.
+                 */
+                if ( Time.lessEqual( deadline, timeCurrent ) )
+                        deadline = timeCurrent + 1;
+                timers.schedule( peer.timer, deadline );
+        }
+
+        /**
+         * Finds how long to wait for incoming datagrams.
+         * 
+         * @param timeout
+         *            The time at which the caller wants to be back.
+         * @return The milliseconds until the timeout or the next due timer,
+         *         whichever comes first.
+         */
+        int waitTime( int timeout ) {
+                return Time.difference( timers.nextDeadline( timeout ), timeCurrent );
+        }
+
+        /**
+         * Queues a peer which has just been sent to again if it has more to send,
+         * and sets its timer for its next retransmission or ping.
+         * 
+         * @param peer
+         *            The peer.
+         */
+        private void rescheduleSend( Peer peer ) {
+                if ( peer.hasOutgoingCommands() )
+                        queueSend( peer );
+                scheduleTimer( peer );
+        }
+
+        /**
+         * Puts back the peers left in a detached part of the send queue.
+         * 
+         * @param peer
+         *            The first peer left, or null.
+         */
+        private void requeueSend( Peer peer ) {
+                Peer nextPeer;
+
+                while ( peer != null ) {
+                        nextPeer = peer.nextSend;
+                        peer.needsSend = false;
+                        queueSend( peer );
+                        peer = nextPeer;
+                }
+        }
+
         Event sendOutgoingCommands( boolean checkForTimeouts ) {
                 Event result = new Event();
                 result.setType( Event.TYPE.NONE );
                 Header header = new Header();
                 int packetsSent = 1;
                 int sentLength;
+                Peer currentPeer;
+                Peer nextPeer;
 
                 while ( packetsSent > 0 ) {
                         packetsSent = 0;
-                        for ( Peer currentPeer : peers.values() ) {
-                                if ( currentPeer.isDisconnected() || currentPeer.isZombie() )
+                        nextPeer = sendQueue;
+                        sendQueue = null;
+                        sendQueueTail = null;
+
+                        while ( nextPeer != null ) {
+                                currentPeer = nextPeer;
+                                nextPeer = currentPeer.nextSend;
+                                currentPeer.nextSend = null;
+                                currentPeer.needsSend = false;
+
+                                if ( currentPeer.isDisconnected() || currentPeer.isZombie() ) {
+                                        timers.cancel( currentPeer.timer );
                                         continue;
+                                }
 
-                                commands.clear();
+                                commandCount = 0;
                                 buffers.clear();
                                 bufferCount = 0;
                                 header.toBuffer( buffers );
 
-                                if ( !currentPeer.getAcknowledgements().isEmpty() )
+                                boolean holdAcknowledgements = currentPeer.getAcknowledgementCount() > 0
+                                                && !currentPeer.acknowledgementsDue();
+                                if ( currentPeer.getAcknowledgementCount() > 0 && !holdAcknowledgements )
                                         currentPeer.sendAcknowledgements();
 
-                                if ( commands.size() < configuration.getInt( "ENET_PROTOCOL_MAXIMUM_PACKET_COMMANDS" ) ) {
+                                if ( commandCount < config.maximumPacketCommands ) {
 
                                         if ( checkForTimeouts && !currentPeer.getSentReliableCommands().isEmpty()
                                                         && Time.greaterEqual( timeCurrent, currentPeer.getNextTimeout() ) ) {
                                                 result = currentPeer.checkTimeouts();
-                                                if ( result.getType() == Event.TYPE.DISCONNECTED )
+                                                if ( result.getType() == Event.TYPE.DISCONNECTED ) {
+                                                        requeueSend( nextPeer );
                                                         return result;
+                                                }
                                         }
 
-                                        Ping ping = new Ping();
-
                                         //Send any reliable commands
                                         if ( !currentPeer.getOutgoingReliableCommands().isEmpty() )
                                                 currentPeer.sendReliableOutgoingCommands();
 
                                         else if ( currentPeer.getSentReliableCommands().isEmpty()
-                                                        && Time.difference( timeCurrent, currentPeer.getLastReceiveTime() ) >= configuration
-                                                                        .getInt( "ENET_PEER_PING_INTERVAL" )
-                                                        && currentPeer.getMtu() - getPacketSize() >= ping.byteSize() ) {
+                                                        && Time.difference( timeCurrent, currentPeer.getLastReceiveTime() ) >= config.pingInterval
+                                                        && currentPeer.getMtu() - getPacketSize() >= Command.BYTE_SIZE ) {
                                                 currentPeer.ping(); //Add the ping the peer's reliable command list
                                                 currentPeer.sendReliableOutgoingCommands(); //Send the ping
                                         }
 
                                         //Send unreliable commands if there is space
-                                        if ( commands.size() < configuration.getInt( "ENET_PROTOCOL_MAXIMUM_PACKET_COMMANDS" )
+                                        if ( commandCount < config.maximumPacketCommands
                                                         && !currentPeer.getOutgoingUnreliableCommands().isEmpty() ) {
                                                 currentPeer.sendUnreliableOutgoingCommands();
                                         }
+                                }
 
-                                        if ( commands.size() == 0 )
-                                                continue;
+                                //Held acknowledgements ride along with a datagram sent anyway
+                                if ( holdAcknowledgements && commandCount > 0 )
+                                        currentPeer.sendAcknowledgements();
 
-                                        if ( currentPeer.getPacketLossEpoch() == 0 )
-                                                currentPeer.setPacketLossEpoch( timeCurrent );
-                                        else if ( Time.difference( timeCurrent, currentPeer.getPacketLossEpoch() ) >= configuration
-                                                        .getInt( "ENET_PEER_PACKET_LOSS_INTERVAL" )
-                                                        && currentPeer.getPacketsSent() > 0 ) {
-                                                currentPeer.updatePacketLossVariance( timeCurrent );
-                                        }
+                                if ( commandCount == 0 ) {
+                                        rescheduleSend( currentPeer );
+                                        continue;
+                                }
 
-                                        header.setPeerID( currentPeer.getOutgoingPeerID() );
-                                        header.setFlags( (byte) 0 );
-                                        header.setCommandCount( (byte) commands.size() );
-                                        header.setSentTime( timeCurrent );
-                                        header.setChallenge( currentPeer.getChallenge() );
+                                if ( currentPeer.getPacketLossEpoch() == 0 )
+                                        currentPeer.setPacketLossEpoch( timeCurrent );
+                                else if ( Time.difference( timeCurrent, currentPeer.getPacketLossEpoch() ) >= config.packetLossInterval
+                                                && currentPeer.getPacketsSent() > 0 ) {
+                                        currentPeer.updatePacketLossVariance( timeCurrent );
+                                }
+
+                                header.setPeerID( currentPeer.getOutgoingPeerID() );
+                                header.setFlags( (byte) 0 );
+                                header.setCommandCount( (byte) commandCount );
+                                header.setSentTime( getTimeStamp() );
+                                header.setChallenge( currentPeer.getChallenge() );
 
-                                        int position = buffers.position();
-                                        int limit = buffers.limit();
-                                        buffers.clear();
-                                        header.toBuffer( buffers );
-                                        buffers.position( position );
-                                        buffers.limit( limit );
+                                int position = buffers.position();
+                                int limit = buffers.limit();
+                                buffers.clear();
+                                header.toBuffer( buffers );
+                                buffers.position( position );
+                                buffers.limit( limit );
 
-                                        LOG.debug( "Host.sendOutgoingCommands:" + address + ". Buffering header: \n" + header );
+                                LOG.debug( "Host.sendOutgoingCommands:" + address + ". Buffering header: \n" + header );
 
-                                        currentPeer.setLastSendTime( timeCurrent );
+                                currentPeer.setLastSendTime( timeCurrent );
 
-                                        ++packetsSent;
+                                ++packetsSent;
 
-                                        sentLength = send( currentPeer );
-                                        currentPeer.getSentUnreliableCommands().clear();
+                                sentLength = send( currentPeer );
+                                currentPeer.removeSentUnreliableCommands();
 
-                                        if ( sentLength < 0 ) {
-                                                result.setType( Event.TYPE.ERROR );
-                                                return result;
-                                        }
+                                if ( sentLength < 0 ) {
+                                        rescheduleSend( currentPeer );
+                                        requeueSend( nextPeer );
+                                        result.setType( Event.TYPE.ERROR );
+                                        return result;
                                 }
 
+                                rescheduleSend( currentPeer );
                         }
                 }
                 return result;
@@ -826,64 +1479,159 @@ public class Host {
          * @return An {@link net.jenet.Event} object.
          */
         synchronized public Event service( int timeout ) {
-                LOG.debug( "Servicing host:\n" + this );
-                Event event = dispatchIncomingCommands();
+                serviceEvent[0] = null;
+                if ( service( timeout, serviceEvent ) == 0 )
+                        return new Event();
+                return serviceEvent[0];
+        }
+
+        /**
+         * Poll for new events and handle packet transmission and reception,
+         * collecting every event which is ready instead of one at a time. This
+         * method polls the network until at least one {@link net.jenet.Event} is
+         * ready or the number of milliseconds in <code>timeout</code> has elapsed.
+         * It then fills <code>events</code> with as many events as are ready and
+         * fit; the rest are returned by the next call.
+         * <p>
+         * The events in the array are reused: each slot used is overwritten, and
+         * empty slots are filled with new events, so the same array can be passed
+         * to every call.
+         * 
+         * @see net.jenet.Event
+         * @param timeout
+         *            The time to poll the network in milliseconds
+         * @param events
+         *            The batch of events to fill.
+         * @return The number of events at the beginning of <code>events</code>.
+         * @throws IllegalArgumentException
+         *             If <code>events</code> is empty.
+         */
+        synchronized public int service( int timeout, Event[] events ) {
+                int count = 0;
                 short waitCondition;
+                int waitTime;
+
+                if ( events.length == 0 )
+                        throw new IllegalArgumentException( "Empty batch of events" );
+
+                LOG.debug( "Servicing host:\n" + this );
 
-                if ( event.getType() == Event.TYPE.DISCONNECTED || event.getType() == Event.TYPE.RECEIVED )
-                        return event;
+                while ( count < events.length && !this.events.isEmpty() )
+                        count = addEvent( events, count, this.events.poll() );
 
-                timeCurrent = getTime();
+                count = dispatchIncomingCommands( events, count );
+                if ( count > 0 )
+                        return count;
+
+                updateTime();
                 timeout += timeCurrent;
 
                 do {
+                        expireTimers();
 
-                        if ( Time.difference( timeCurrent, bandwidthThrottleEpoch ) >= configuration
-                                        .getInt( "ENET_HOST_BANDWIDTH_THROTTLE_INTERVAL" ) )
-                                bandwidthThrottle();
-
-                        event = sendOutgoingCommands( true );
-                        
+                        Event event = sendOutgoingCommands( true );
+                        if ( event.getType() != Event.TYPE.NONE )
+                                count = addEvent( events, count, event );
                         if ( event.getType() == Event.TYPE.ERROR )
-                                LOG.error( "Error" );
-
-                        if ( event.getType() == Event.TYPE.DISCONNECTED || event.getType() == Event.TYPE.ERROR )
-                                return event;
+                                return count;
 
+                        /*
+                         * One pass over the socket, within the receive budget; the
+                         * other events it produced are queued.
+                         */
                         event = receiveIncomingCommands();
-
                         if ( event.getType() != Event.TYPE.NONE )
-                                return event;
+                                count = addEvent( events, count, event );
+                        if ( event.getType() == Event.TYPE.ERROR )
+                                return count;
+                        while ( count < events.length && !this.events.isEmpty() )
+                                count = addEvent( events, count, this.events.poll() );
 
                         event = sendOutgoingCommands( true );
+                        if ( event.getType() != Event.TYPE.NONE )
+                                count = addEvent( events, count, event );
+                        if ( event.getType() == Event.TYPE.ERROR )
+                                return count;
 
-                        if ( event.getType() == Event.TYPE.DISCONNECTED || event.getType() == Event.TYPE.ERROR )
-                                return event;
-
-                        event = dispatchIncomingCommands();
+                        count = dispatchIncomingCommands( events, count );
+                        if ( count > 0 )
+                                return count;
 
-                        if ( event.getType() == Event.TYPE.DISCONNECTED || event.getType() == Event.TYPE.RECEIVED )
-                                return event;
+                        if ( Time.greaterEqual( timeCurrent, timeout ) )
+                                return count;
 
-                        timeCurrent = getTime();
+                        waitTime = waitTime( timeout );
+                        if ( waitTime <= 0 )
+                                waitCondition = WAIT_NONE;
+                        else {
+                                waitCondition = socketWait( WAIT_RECEIVE, waitTime );
 
-                        if ( Time.greaterEqual( timeCurrent, timeout ) ) {
-                                LOG.debug( "Host.service: " + address + " service timed out" );
-                                return event;
+                                if ( waitCondition == WAIT_ERROR ) {
+                                        event.setType( Event.TYPE.ERROR );
+                                        return addEvent( events, count, event );
+                                }
                         }
 
-                        waitCondition = socketWait( WAIT_RECEIVE, Time.difference( timeout, timeCurrent ) );
+                        updateTime();
 
-                        if ( waitCondition == WAIT_ERROR ) {
-                                event.setType( Event.TYPE.ERROR );
-                                return event;
-                        }
+                } while ( waitCondition == WAIT_RECEIVE || Time.less( timeCurrent, timeout ) );
 
-                        timeCurrent = getTime();
+                return count;
+        }
 
-                } while ( waitCondition == WAIT_RECEIVE );
+        /**
+         * Copies an event into the next slot of a batch. If the batch is full the
+         * event is queued for the next call to <code>service</code>.
+         * 
+         * @return The number of events in the batch.
+         */
+        private int addEvent( Event[] batch, int count, Event event ) {
+                if ( count >= batch.length ) {
+                        events.add( event );
+                        return count;
+                }
+                if ( batch[count] == null )
+                        batch[count] = new Event();
+                batch[count].set( event );
+                return count + 1;
+        }
 
-                return event;
+        /**
+         * Dispatches ready packets and disconnections straight into the free
+         * slots of a batch.
+         * 
+         * @return The number of events in the batch.
+         */
+        private int dispatchIncomingCommands( Event[] batch, int count ) {
+                while ( count < batch.length ) {
+                        if ( batch[count] == null )
+                                batch[count] = new Event();
+                        else
+                                batch[count].clear();
+                        if ( dispatchIncomingCommands( batch[count] ).getType() == Event.TYPE.NONE )
+                                break;
+                        count++;
+                }
+                return count;
+        }
+
+        /**
+         * Bounds the work done reading from the socket in each service pass. When
+         * a budget is set, up to <code>datagrams</code> datagrams are read and
+         * decoded, or as many as fit in <code>microseconds</code>, before the
+         * host goes on to dispatch and send. A budget of <code>0</code>
+         * datagrams restores the default behaviour of returning as soon as a
+         * datagram produces an event, still within <code>microseconds</code>.
+         * 
+         * @param datagrams
+         *            The maximum number of datagrams per pass (0 = stop at the
+         *            first event).
+         * @param microseconds
+         *            The maximum time per pass in microseconds (0 = unbounded).
+         */
+        public void setReceiveBudget( int datagrams, int microseconds ) {
+                this.receiveBatchSize = datagrams;
+                this.receiveBatchTime = microseconds;
         }
 
         /**
@@ -894,6 +1642,23 @@ public class Host {
                 this.recalculateBandwithLimits = recalculateBandwithLimits;
         }
 
+        /**
+         * Selects how received packets are delivered. In zero-copy mode the
+         * {@link Packet Packet} of a <code>RECEIVED</code> event is a read-only
+         * view over the pooled buffer of the datagram that carried it, and
+         * {@link Packet#release Packet.release} must be called once the
+         * application is done with it so the buffer can be reused. Payloads are
+         * still copied when they have to be kept past the datagram, such as
+         * reliable packets received out of order and fragmented packets.
+         * 
+         * @param zeroCopy
+         *            <code>true</code> to deliver views, <code>false</code> to
+         *            deliver copies.
+         */
+        public void setZeroCopy( boolean zeroCopy ) {
+                this.zeroCopy = zeroCopy;
+        }
+
         short socketWait( short keyType, int timeOut ) {
                 try {
                         communicationSelector.select( timeOut );
@@ -0,0 +1,1045 @@
+/*
+ * Copyright (c) 2005 Dizan Vasquez
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.jenet;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+
+/**
+ * The settings of a {@link Host} and of its peers. A configuration is
+ * immutable: it is read once, from a properties file such as
+ * <code>enet.properties</code> or through a {@link Builder}, and every host
+ * keeps its own.
+ * 
+ * @see Host#Host(java.net.InetSocketAddress, int, int, int, HostConfig)
+ */
+public class HostConfig {
+
+        /**
+         * The properties file read by default.
+         */
+        public static final String DEFAULT_FILE = "enet.properties";
+
+        private static HostConfig defaultConfig;
+
+        /**
+         * The interval in milliseconds between bandwidth throttle recalculations.
+         */
+        protected final int bandwidthThrottleInterval;
+
+        /**
+         * The MTU a host starts with.
+         */
+        protected final int defaultMtu;
+
+        /**
+         * The number of receive buffers a host keeps.
+         */
+        protected final int receiveBufferPoolSize;
+
+        /**
+         * The maximum number of datagrams read per service call, 0 for no limit.
+         */
+        protected final int receiveBatchSize;
+
+        /**
+         * The maximum time in microseconds spent reading per service call, 0 for no limit.
+         */
+        protected final int receiveBatchTime;
+
+        /**
+         * Whether received packets are views over the receive buffers.
+         */
+        protected final boolean zeroCopy;
+
+        /**
+         * Whether the packet pool slabs are direct buffers.
+         */
+        protected final boolean packetPoolDirect;
+
+        /**
+         * The size in bytes of each packet pool slab.
+         */
+        protected final int packetPoolSlabSize;
+
+        /**
+         * Whether reliable commands keep their encoded form while in flight, so
+         * that retransmitting them is a copy.
+         */
+        protected final boolean cacheEncodedCommands;
+
+        /**
+         * Whether sent times are stamped in microseconds rather than milliseconds,
+         * so that round trips shorter than a millisecond can be measured.
+         */
+        protected final boolean highResolutionTiming;
+
+        /**
+         * Whether acknowledgements of several commands from one datagram are sent
+         * as a single selective acknowledgement to peers which understand them.
+         */
+        protected final boolean selectiveAcknowledgements;
+
+        /**
+         * The round trip time in milliseconds a peer starts with.
+         */
+        protected final int defaultRoundTripTime;
+
+        /**
+         * The packet throttle a peer starts with.
+         */
+        protected final int defaultPacketThrottle;
+
+        /**
+         * The packet throttle value meaning no unreliable packet is dropped.
+         */
+        protected final int packetThrottleScale;
+
+        /**
+         * The step of the counter deciding which unreliable packets are dropped.
+         */
+        protected final int packetThrottleCounter;
+
+        /**
+         * The default packet throttle acceleration.
+         */
+        protected final int packetThrottleAcceleration;
+
+        /**
+         * The default packet throttle deceleration.
+         */
+        protected final int packetThrottleDeceleration;
+
+        /**
+         * The default packet throttle interval in milliseconds.
+         */
+        protected final int packetThrottleInterval;
+
+        /**
+         * The fixed point scale of packet loss figures.
+         */
+        protected final int packetLossScale;
+
+        /**
+         * The interval in milliseconds over which packet loss is measured.
+         */
+        protected final int packetLossInterval;
+
+        /**
+         * The bandwidth in bytes/second that earns a minimum window.
+         */
+        protected final int windowSizeScale;
+
+        /**
+         * The number of round trip timeouts after which a peer is disconnected.
+         */
+        protected final int timeoutLimit;
+
+        /**
+         * The time in milliseconds after which an idle peer is pinged.
+         */
+        protected final int pingInterval;
+
+        /**
+         * The time in milliseconds for which a peer may hold acknowledgements,
+         * waiting for a datagram to carry them. Zero sends them straight away.
+         */
+        protected final int acknowledgementDelay;
+
+        /**
+         * The number of held acknowledgements at which a peer sends them without
+         * waiting any longer.
+         */
+        protected final int acknowledgementThreshold;
+
+        /**
+         * The number of unsequenced groups a peer remembers.
+         */
+        protected final int unsequencedWindowSize;
+
+        /**
+         * The smallest MTU a connection may use.
+         */
+        protected final int minimumMtu;
+
+        /**
+         * The largest MTU a connection may use.
+         */
+        protected final int maximumMtu;
+
+        /**
+         * The maximum number of commands in a datagram.
+         */
+        protected final int maximumPacketCommands;
+
+        /**
+         * The smallest reliable window in bytes.
+         */
+        protected final int minimumWindowSize;
+
+        /**
+         * The largest reliable window in bytes.
+         */
+        protected final int maximumWindowSize;
+
+        /**
+         * The smallest number of channels a connection may use.
+         */
+        protected final int minimumChannelCount;
+
+        /**
+         * The largest number of channels a connection may use.
+         */
+        protected final int maximumChannelCount;
+
+        /**
+         * The maximum number of buffers in a datagram.
+         */
+        protected final int bufferMaximum;
+
+        HostConfig( Builder builder ) {
+                super();
+                bandwidthThrottleInterval = builder.bandwidthThrottleInterval;
+                defaultMtu = builder.defaultMtu;
+                receiveBufferPoolSize = builder.receiveBufferPoolSize;
+                receiveBatchSize = builder.receiveBatchSize;
+                receiveBatchTime = builder.receiveBatchTime;
+                zeroCopy = builder.zeroCopy;
+                packetPoolDirect = builder.packetPoolDirect;
+                packetPoolSlabSize = builder.packetPoolSlabSize;
+                cacheEncodedCommands = builder.cacheEncodedCommands;
+                highResolutionTiming = builder.highResolutionTiming;
+                selectiveAcknowledgements = builder.selectiveAcknowledgements;
+                defaultRoundTripTime = builder.defaultRoundTripTime;
+                defaultPacketThrottle = builder.defaultPacketThrottle;
+                packetThrottleScale = builder.packetThrottleScale;
+                packetThrottleCounter = builder.packetThrottleCounter;
+                packetThrottleAcceleration = builder.packetThrottleAcceleration;
+                packetThrottleDeceleration = builder.packetThrottleDeceleration;
+                packetThrottleInterval = builder.packetThrottleInterval;
+                packetLossScale = builder.packetLossScale;
+                packetLossInterval = builder.packetLossInterval;
+                windowSizeScale = builder.windowSizeScale;
+                timeoutLimit = builder.timeoutLimit;
+                pingInterval = builder.pingInterval;
+                acknowledgementDelay = builder.acknowledgementDelay;
+                acknowledgementThreshold = builder.acknowledgementThreshold;
+                unsequencedWindowSize = builder.unsequencedWindowSize;
+                minimumMtu = builder.minimumMtu;
+                maximumMtu = builder.maximumMtu;
+                maximumPacketCommands = builder.maximumPacketCommands;
+                minimumWindowSize = builder.minimumWindowSize;
+                maximumWindowSize = builder.maximumWindowSize;
+                minimumChannelCount = builder.minimumChannelCount;
+                maximumChannelCount = builder.maximumChannelCount;
+                bufferMaximum = builder.bufferMaximum;
+        }
+
+        /**
+         * Reads a configuration from a properties file. Missing properties keep
+         * their default value.
+         * 
+         * @param fileName
+         *            The name of the file, looked up like
+         *            {@link PropertiesConfiguration#PropertiesConfiguration(String)}
+         *            does.
+         * @return The configuration.
+         * @throws ConfigurationException
+         *             if the file can not be read.
+         */
+        public static HostConfig load( String fileName ) throws ConfigurationException {
+                return new Builder( new PropertiesConfiguration( fileName ) ).build();
+        }
+
+        /**
+         * Returns the configuration read from <code>enet.properties</code>. The
+         * file is only read the first time.
+         * 
+         * @return The configuration.
+         * @throws ConfigurationException
+         *             if the file is not in the path.
+         */
+        public static synchronized HostConfig getDefault() throws ConfigurationException {
+                if ( defaultConfig == null )
+                        defaultConfig = load( DEFAULT_FILE );
+                return defaultConfig;
+        }
+
+        /**
+         * @return Returns the bandwidthThrottleInterval.
+         */
+        public int getBandwidthThrottleInterval() {
+                return bandwidthThrottleInterval;
+        }
+
+        /**
+         * @return Returns the defaultMtu.
+         */
+        public int getDefaultMtu() {
+                return defaultMtu;
+        }
+
+        /**
+         * @return Returns the receiveBufferPoolSize.
+         */
+        public int getReceiveBufferPoolSize() {
+                return receiveBufferPoolSize;
+        }
+
+        /**
+         * @return Returns the receiveBatchSize.
+         */
+        public int getReceiveBatchSize() {
+                return receiveBatchSize;
+        }
+
+        /**
+         * @return Returns the receiveBatchTime.
+         */
+        public int getReceiveBatchTime() {
+                return receiveBatchTime;
+        }
+
+        /**
+         * @return Returns the zeroCopy.
+         */
+        public boolean isZeroCopy() {
+                return zeroCopy;
+        }
+
+        /**
+         * @return Returns the packetPoolDirect.
+         */
+        public boolean isPacketPoolDirect() {
+                return packetPoolDirect;
+        }
+
+        /**
+         * @return Returns the packetPoolSlabSize.
+         */
+        public int getPacketPoolSlabSize() {
+                return packetPoolSlabSize;
+        }
+
+        /**
+         * @return Returns the cacheEncodedCommands.
+         */
+        public boolean isCacheEncodedCommands() {
+                return cacheEncodedCommands;
+        }
+
+        /**
+         * @return Returns the highResolutionTiming.
+         */
+        public boolean isHighResolutionTiming() {
+                return highResolutionTiming;
+        }
+
+        /**
+         * @return Returns the selectiveAcknowledgements.
+         */
+        public boolean isSelectiveAcknowledgements() {
+                return selectiveAcknowledgements;
+        }
+
+        /**
+         * @return Returns the defaultRoundTripTime.
+         */
+        public int getDefaultRoundTripTime() {
+                return defaultRoundTripTime;
+        }
+
+        /**
+         * @return Returns the defaultPacketThrottle.
+         */
+        public int getDefaultPacketThrottle() {
+                return defaultPacketThrottle;
+        }
+
+        /**
+         * @return Returns the packetThrottleScale.
+         */
+        public int getPacketThrottleScale() {
+                return packetThrottleScale;
+        }
+
+        /**
+         * @return Returns the packetThrottleCounter.
+         */
+        public int getPacketThrottleCounter() {
+                return packetThrottleCounter;
+        }
+
+        /**
+         * @return Returns the packetThrottleAcceleration.
+         */
+        public int getPacketThrottleAcceleration() {
+                return packetThrottleAcceleration;
+        }
+
+        /**
+         * @return Returns the packetThrottleDeceleration.
+         */
+        public int getPacketThrottleDeceleration() {
+                return packetThrottleDeceleration;
+        }
+
+        /**
+         * @return Returns the packetThrottleInterval.
+         */
+        public int getPacketThrottleInterval() {
+                return packetThrottleInterval;
+        }
+
+        /**
+         * @return Returns the packetLossScale.
+         */
+        public int getPacketLossScale() {
+                return packetLossScale;
+        }
+
+        /**
+         * @return Returns the packetLossInterval.
+         */
+        public int getPacketLossInterval() {
+                return packetLossInterval;
+        }
+
+        /**
+         * @return Returns the windowSizeScale.
+         */
+        public int getWindowSizeScale() {
+                return windowSizeScale;
+        }
+
+        /**
+         * @return Returns the timeoutLimit.
+         */
+        public int getTimeoutLimit() {
+                return timeoutLimit;
+        }
+
+        /**
+         * @return Returns the pingInterval.
+         */
+        public int getPingInterval() {
+                return pingInterval;
+        }
+
+        /**
+         * @return Returns the acknowledgementDelay.
+         */
+        public int getAcknowledgementDelay() {
+                return acknowledgementDelay;
+        }
+
+        /**
+         * @return Returns the acknowledgementThreshold.
+         */
+        public int getAcknowledgementThreshold() {
+                return acknowledgementThreshold;
+        }
+
+        /**
+         * @return Returns the unsequencedWindowSize.
+         */
+        public int getUnsequencedWindowSize() {
+                return unsequencedWindowSize;
+        }
+
+        /**
+         * @return Returns the minimumMtu.
+         */
+        public int getMinimumMtu() {
+                return minimumMtu;
+        }
+
+        /**
+         * @return Returns the maximumMtu.
+         */
+        public int getMaximumMtu() {
+                return maximumMtu;
+        }
+
+        /**
+         * @return Returns the maximumPacketCommands.
+         */
+        public int getMaximumPacketCommands() {
+                return maximumPacketCommands;
+        }
+
+        /**
+         * @return Returns the minimumWindowSize.
+         */
+        public int getMinimumWindowSize() {
+                return minimumWindowSize;
+        }
+
+        /**
+         * @return Returns the maximumWindowSize.
+         */
+        public int getMaximumWindowSize() {
+                return maximumWindowSize;
+        }
+
+        /**
+         * @return Returns the minimumChannelCount.
+         */
+        public int getMinimumChannelCount() {
+                return minimumChannelCount;
+        }
+
+        /**
+         * @return Returns the maximumChannelCount.
+         */
+        public int getMaximumChannelCount() {
+                return maximumChannelCount;
+        }
+
+        /**
+         * @return Returns the bufferMaximum.
+         */
+        public int getBufferMaximum() {
+                return bufferMaximum;
+        }
+
+        /**
+         * Builds a {@link HostConfig}. A new builder holds the default values of
+         * <code>enet.properties</code>.
+         */
+        public static class Builder {
+
+                protected int bandwidthThrottleInterval = 1000;
+
+                protected int defaultMtu = 1400;
+
+                protected int receiveBufferPoolSize = 16;
+
+                protected int receiveBatchSize = 0;
+
+                protected int receiveBatchTime = 0;
+
+                protected boolean zeroCopy = false;
+
+                protected boolean packetPoolDirect = true;
+
+                protected int packetPoolSlabSize = 65536;
+
+                protected boolean cacheEncodedCommands = true;
+
+                protected boolean highResolutionTiming = false;
+
+                protected boolean selectiveAcknowledgements = true;
+
+                protected int defaultRoundTripTime = 500;
+
+                protected int defaultPacketThrottle = 32;
+
+                protected int packetThrottleScale = 32;
+
+                protected int packetThrottleCounter = 7;
+
+                protected int packetThrottleAcceleration = 2;
+
+                protected int packetThrottleDeceleration = 2;
+
+                protected int packetThrottleInterval = 5000;
+
+                protected int packetLossScale = 65536;
+
+                protected int packetLossInterval = 10000;
+
+                protected int windowSizeScale = 65536;
+
+                protected int timeoutLimit = 32;
+
+                protected int pingInterval = 500;
+
+                protected int acknowledgementDelay = 0;
+
+                protected int acknowledgementThreshold = 32;
+
+                protected int unsequencedWindowSize = 128;
+
+                protected int minimumMtu = 576;
+
+                protected int maximumMtu = 4096;
+
+                protected int maximumPacketCommands = 32;
+
+                protected int minimumWindowSize = 4096;
+
+                protected int maximumWindowSize = 32768;
+
+                protected int minimumChannelCount = 1;
+
+                protected int maximumChannelCount = 255;
+
+                protected int bufferMaximum = 65;
+
+                /**
+                 * Creates a builder with the default values.
+                 */
+                public Builder() {
+                        super();
+                }
+
+                /**
+                 * Creates a builder with the values of a configuration. Missing
+                 * properties keep their default value.
+                 * 
+                 * @param configuration
+                 *            The configuration to read.
+                 */
+                public Builder( Configuration configuration ) {
+                        super();
+                        bandwidthThrottleInterval = configuration.getInt( "ENET_HOST_BANDWIDTH_THROTTLE_INTERVAL", bandwidthThrottleInterval );
+                        defaultMtu = configuration.getInt( "ENET_HOST_DEFAULT_MTU", defaultMtu );
+                        receiveBufferPoolSize = configuration.getInt( "ENET_HOST_RECEIVE_BUFFER_POOL_SIZE", receiveBufferPoolSize );
+                        receiveBatchSize = configuration.getInt( "ENET_HOST_RECEIVE_BATCH_SIZE", receiveBatchSize );
+                        receiveBatchTime = configuration.getInt( "ENET_HOST_RECEIVE_BATCH_TIME", receiveBatchTime );
+                        zeroCopy = configuration.getBoolean( "ENET_HOST_ZERO_COPY", zeroCopy );
+                        packetPoolDirect = configuration.getBoolean( "ENET_HOST_PACKET_POOL_DIRECT", packetPoolDirect );
+                        packetPoolSlabSize = configuration.getInt( "ENET_HOST_PACKET_POOL_SLAB_SIZE", packetPoolSlabSize );
+                        cacheEncodedCommands = configuration.getBoolean( "ENET_HOST_CACHE_ENCODED_COMMANDS", cacheEncodedCommands );
+                        highResolutionTiming = configuration.getBoolean( "ENET_HOST_HIGH_RESOLUTION_TIMING", highResolutionTiming );
+                        selectiveAcknowledgements = configuration.getBoolean( "ENET_HOST_SELECTIVE_ACKNOWLEDGEMENTS", selectiveAcknowledgements );
+                        defaultRoundTripTime = configuration.getInt( "ENET_PEER_DEFAULT_ROUND_TRIP_TIME", defaultRoundTripTime );
+                        defaultPacketThrottle = configuration.getInt( "ENET_PEER_DEFAULT_PACKET_THROTTLE", defaultPacketThrottle );
+                        packetThrottleScale = configuration.getInt( "ENET_PEER_PACKET_THROTTLE_SCALE", packetThrottleScale );
+                        packetThrottleCounter = configuration.getInt( "ENET_PEER_PACKET_THROTTLE_COUNTER", packetThrottleCounter );
+                        packetThrottleAcceleration = configuration.getInt( "ENET_PEER_PACKET_THROTTLE_ACCELERATION", packetThrottleAcceleration );
+                        packetThrottleDeceleration = configuration.getInt( "ENET_PEER_PACKET_THROTTLE_DECELERATION", packetThrottleDeceleration );
+                        packetThrottleInterval = configuration.getInt( "ENET_PEER_PACKET_THROTTLE_INTERVAL", packetThrottleInterval );
+                        packetLossScale = configuration.getInt( "ENET_PEER_PACKET_LOSS_SCALE", packetLossScale );
+                        packetLossInterval = configuration.getInt( "ENET_PEER_PACKET_LOSS_INTERVAL", packetLossInterval );
+                        windowSizeScale = configuration.getInt( "ENET_PEER_WINDOW_SIZE_SCALE", windowSizeScale );
+                        timeoutLimit = configuration.getInt( "ENET_PEER_TIMEOUT_LIMIT", timeoutLimit );
+                        pingInterval = configuration.getInt( "ENET_PEER_PING_INTERVAL", pingInterval );
+                        acknowledgementDelay = configuration.getInt( "ENET_PEER_ACKNOWLEDGEMENT_DELAY", acknowledgementDelay );
+                        acknowledgementThreshold = configuration.getInt( "ENET_PEER_ACKNOWLEDGEMENT_THRESHOLD",
+                                        acknowledgementThreshold );
+                        unsequencedWindowSize = configuration.getInt( "ENET_PEER_UNSEQUENCED_WINDOW_SIZE", unsequencedWindowSize );
+                        minimumMtu = configuration.getInt( "ENET_PROTOCOL_MINIMUM_MTU", minimumMtu );
+                        maximumMtu = configuration.getInt( "ENET_PROTOCOL_MAXIMUM_MTU", maximumMtu );
+                        maximumPacketCommands = configuration.getInt( "ENET_PROTOCOL_MAXIMUM_PACKET_COMMANDS", maximumPacketCommands );
+                        minimumWindowSize = configuration.getInt( "ENET_PROTOCOL_MINIMUM_WINDOW_SIZE", minimumWindowSize );
+                        maximumWindowSize = configuration.getInt( "ENET_PROTOCOL_MAXIMUM_WINDOW_SIZE", maximumWindowSize );
+                        minimumChannelCount = configuration.getInt( "ENET_PROTOCOL_MINIMUM_CHANNEL_COUNT", minimumChannelCount );
+                        maximumChannelCount = configuration.getInt( "ENET_PROTOCOL_MAXIMUM_CHANNEL_COUNT", maximumChannelCount );
+                        bufferMaximum = configuration.getInt( "ENET_BUFFER_MAXIMUM", bufferMaximum );
+                }
+
+                /**
+                 * Creates a builder with the values of a configuration, to derive
+                 * another one from it.
+                 * 
+                 * @param config
+                 *            The configuration to copy.
+                 */
+                public Builder( HostConfig config ) {
+                        super();
+                        bandwidthThrottleInterval = config.bandwidthThrottleInterval;
+                        defaultMtu = config.defaultMtu;
+                        receiveBufferPoolSize = config.receiveBufferPoolSize;
+                        receiveBatchSize = config.receiveBatchSize;
+                        receiveBatchTime = config.receiveBatchTime;
+                        zeroCopy = config.zeroCopy;
+                        packetPoolDirect = config.packetPoolDirect;
+                        packetPoolSlabSize = config.packetPoolSlabSize;
+                        cacheEncodedCommands = config.cacheEncodedCommands;
+                        highResolutionTiming = config.highResolutionTiming;
+                        selectiveAcknowledgements = config.selectiveAcknowledgements;
+                        defaultRoundTripTime = config.defaultRoundTripTime;
+                        defaultPacketThrottle = config.defaultPacketThrottle;
+                        packetThrottleScale = config.packetThrottleScale;
+                        packetThrottleCounter = config.packetThrottleCounter;
+                        packetThrottleAcceleration = config.packetThrottleAcceleration;
+                        packetThrottleDeceleration = config.packetThrottleDeceleration;
+                        packetThrottleInterval = config.packetThrottleInterval;
+                        packetLossScale = config.packetLossScale;
+                        packetLossInterval = config.packetLossInterval;
+                        windowSizeScale = config.windowSizeScale;
+                        timeoutLimit = config.timeoutLimit;
+                        pingInterval = config.pingInterval;
+                        acknowledgementDelay = config.acknowledgementDelay;
+                        acknowledgementThreshold = config.acknowledgementThreshold;
+                        unsequencedWindowSize = config.unsequencedWindowSize;
+                        minimumMtu = config.minimumMtu;
+                        maximumMtu = config.maximumMtu;
+                        maximumPacketCommands = config.maximumPacketCommands;
+                        minimumWindowSize = config.minimumWindowSize;
+                        maximumWindowSize = config.maximumWindowSize;
+                        minimumChannelCount = config.minimumChannelCount;
+                        maximumChannelCount = config.maximumChannelCount;
+                        bufferMaximum = config.bufferMaximum;
+                }
+
+                /**
+                 * @return A configuration with the values of this builder.
+                 */
+                public HostConfig build() {
+                        return new HostConfig( this );
+                }
+
+                /**
+                 * @param bandwidthThrottleInterval
+                 *            The bandwidthThrottleInterval to set.
+                 * @return This builder.
+                 */
+                public Builder setBandwidthThrottleInterval( int bandwidthThrottleInterval ) {
+                        this.bandwidthThrottleInterval = bandwidthThrottleInterval;
+                        return this;
+                }
+
+                /**
+                 * @param defaultMtu
+                 *            The defaultMtu to set.
+                 * @return This builder.
+                 */
+                public Builder setDefaultMtu( int defaultMtu ) {
+                        this.defaultMtu = defaultMtu;
+                        return this;
+                }
+
+                /**
+                 * @param receiveBufferPoolSize
+                 *            The receiveBufferPoolSize to set.
+                 * @return This builder.
+                 */
+                public Builder setReceiveBufferPoolSize( int receiveBufferPoolSize ) {
+                        this.receiveBufferPoolSize = receiveBufferPoolSize;
+                        return this;
+                }
+
+                /**
+                 * @param receiveBatchSize
+                 *            The receiveBatchSize to set.
+                 * @return This builder.
+                 */
+                public Builder setReceiveBatchSize( int receiveBatchSize ) {
+                        this.receiveBatchSize = receiveBatchSize;
+                        return this;
+                }
+
+                /**
+                 * @param receiveBatchTime
+                 *            The receiveBatchTime to set.
+                 * @return This builder.
+                 */
+                public Builder setReceiveBatchTime( int receiveBatchTime ) {
+                        this.receiveBatchTime = receiveBatchTime;
+                        return this;
+                }
+
+                /**
+                 * @param zeroCopy
+                 *            The zeroCopy to set.
+                 * @return This builder.
+                 */
+                public Builder setZeroCopy( boolean zeroCopy ) {
+                        this.zeroCopy = zeroCopy;
+                        return this;
+                }
+
+                /**
+                 * @param packetPoolDirect
+                 *            The packetPoolDirect to set.
+                 * @return This builder.
+                 */
+                public Builder setPacketPoolDirect( boolean packetPoolDirect ) {
+                        this.packetPoolDirect = packetPoolDirect;
+                        return this;
+                }
+
+                /**
+                 * @param packetPoolSlabSize
+                 *            The packetPoolSlabSize to set.
+                 * @return This builder.
+                 */
+                public Builder setPacketPoolSlabSize( int packetPoolSlabSize ) {
+                        this.packetPoolSlabSize = packetPoolSlabSize;
+                        return this;
+                }
+
+                /**
+                 * @param cacheEncodedCommands
+                 *            The cacheEncodedCommands to set.
+                 * @return This builder.
+                 */
+                public Builder setCacheEncodedCommands( boolean cacheEncodedCommands ) {
+                        this.cacheEncodedCommands = cacheEncodedCommands;
+                        return this;
+                }
+
+                /**
+                 * @param highResolutionTiming
+                 *            The highResolutionTiming to set.
+                 * @return This builder.
+                 */
+                public Builder setHighResolutionTiming( boolean highResolutionTiming ) {
+                        this.highResolutionTiming = highResolutionTiming;
+                        return this;
+                }
+
+                /**
+                 * @param selectiveAcknowledgements
+                 *            The selectiveAcknowledgements to set.
+                 * @return This builder.
+                 */
+                public Builder setSelectiveAcknowledgements( boolean selectiveAcknowledgements ) {
+                        this.selectiveAcknowledgements = selectiveAcknowledgements;
+                        return this;
+                }
+
+                /**
+                 * @param defaultRoundTripTime
+                 *            The defaultRoundTripTime to set.
+                 * @return This builder.
+                 */
+                public Builder setDefaultRoundTripTime( int defaultRoundTripTime ) {
+                        this.defaultRoundTripTime = defaultRoundTripTime;
+                        return this;
+                }
+
+                /**
+                 * @param defaultPacketThrottle
+                 *            The defaultPacketThrottle to set.
+                 * @return This builder.
+                 */
+                public Builder setDefaultPacketThrottle( int defaultPacketThrottle ) {
+                        this.defaultPacketThrottle = defaultPacketThrottle;
+                        return this;
+                }
+
+                /**
+                 * @param packetThrottleScale
+                 *            The packetThrottleScale to set.
+                 * @return This builder.
+                 */
+                public Builder setPacketThrottleScale( int packetThrottleScale ) {
+                        this.packetThrottleScale = packetThrottleScale;
+                        return this;
+                }
+
+                /**
+                 * @param packetThrottleCounter
+                 *            The packetThrottleCounter to set.
+                 * @return This builder.
+                 */
+                public Builder setPacketThrottleCounter( int packetThrottleCounter ) {
+                        this.packetThrottleCounter = packetThrottleCounter;
+                        return this;
+                }
+
+                /**
+                 * @param packetThrottleAcceleration
+                 *            The packetThrottleAcceleration to set.
+                 * @return This builder.
+                 */
+                public Builder setPacketThrottleAcceleration( int packetThrottleAcceleration ) {
+                        this.packetThrottleAcceleration = packetThrottleAcceleration;
+                        return this;
+                }
+
+                /**
+                 * @param packetThrottleDeceleration
+                 *            The packetThrottleDeceleration to set.
+                 * @return This builder.
+                 */
+                public Builder setPacketThrottleDeceleration( int packetThrottleDeceleration ) {
+                        this.packetThrottleDeceleration = packetThrottleDeceleration;
+                        return this;
+                }
+
+                /**
+                 * @param packetThrottleInterval
+                 *            The packetThrottleInterval to set.
+                 * @return This builder.
+                 */
+                public Builder setPacketThrottleInterval( int packetThrottleInterval ) {
+                        this.packetThrottleInterval = packetThrottleInterval;
+                        return this;
+                }
+
+                /**
+                 * @param packetLossScale
+                 *            The packetLossScale to set.
+                 * @return This builder.
+                 */
+                public Builder setPacketLossScale( int packetLossScale ) {
+                        this.packetLossScale = packetLossScale;
+                        return this;
+                }
+
+                /**
+                 * @param packetLossInterval
+                 *            The packetLossInterval to set.
+                 * @return This builder.
+                 */
+                public Builder setPacketLossInterval( int packetLossInterval ) {
+                        this.packetLossInterval = packetLossInterval;
+                        return this;
+                }
+
+                /**
+                 * @param windowSizeScale
+                 *            The windowSizeScale to set.
+                 * @return This builder.
+                 */
+                public Builder setWindowSizeScale( int windowSizeScale ) {
+                        this.windowSizeScale = windowSizeScale;
+                        return this;
+                }
+
+                /**
+                 * @param timeoutLimit
+                 *            The timeoutLimit to set.
+                 * @return This builder.
+                 */
+                public Builder setTimeoutLimit( int timeoutLimit ) {
+                        this.timeoutLimit = timeoutLimit;
+                        return this;
+                }
+
+                /**
+                 * @param pingInterval
+                 *            The pingInterval to set.
+                 * @return This builder.
+                 */
+                public Builder setPingInterval( int pingInterval ) {
+                        this.pingInterval = pingInterval;
+                        return this;
+                }
+
+                /**
+                 * @param acknowledgementDelay
+                 *            The acknowledgementDelay to set.
+                 * @return This builder.
+                 */
+                public Builder setAcknowledgementDelay( int acknowledgementDelay ) {
+                        this.acknowledgementDelay = acknowledgementDelay;
+                        return this;
+                }
+
+                /**
+                 * @param acknowledgementThreshold
+                 *            The acknowledgementThreshold to set.
+                 * @return This builder.
+                 */
+                public Builder setAcknowledgementThreshold( int acknowledgementThreshold ) {
+                        this.acknowledgementThreshold = acknowledgementThreshold;
+                        return this;
+                }
+
+                /**
+                 * @param unsequencedWindowSize
+                 *            The unsequencedWindowSize to set.
+                 * @return This builder.
+                 */
+                public Builder setUnsequencedWindowSize( int unsequencedWindowSize ) {
+                        this.unsequencedWindowSize = unsequencedWindowSize;
+                        return this;
+                }
+
+                /**
+                 * @param minimumMtu
+                 *            The minimumMtu to set.
+                 * @return This builder.
+                 */
+                public Builder setMinimumMtu( int minimumMtu ) {
+                        this.minimumMtu = minimumMtu;
+                        return this;
+                }
+
+                /**
+                 * @param maximumMtu
+                 *            The maximumMtu to set.
+                 * @return This builder.
+                 */
+                public Builder setMaximumMtu( int maximumMtu ) {
+                        this.maximumMtu = maximumMtu;
+                        return this;
+                }
+
+                /**
+                 * @param maximumPacketCommands
+                 *            The maximumPacketCommands to set.
+                 * @return This builder.
+                 */
+                public Builder setMaximumPacketCommands( int maximumPacketCommands ) {
+                        this.maximumPacketCommands = maximumPacketCommands;
+                        return this;
+                }
+
+                /**
+                 * @param minimumWindowSize
+                 *            The minimumWindowSize to set.
+                 * @return This builder.
+                 */
+                public Builder setMinimumWindowSize( int minimumWindowSize ) {
+                        this.minimumWindowSize = minimumWindowSize;
+                        return this;
+                }
+
+                /**
+                 * @param maximumWindowSize
+                 *            The maximumWindowSize to set.
+                 * @return This builder.
+                 */
+                public Builder setMaximumWindowSize( int maximumWindowSize ) {
+                        this.maximumWindowSize = maximumWindowSize;
+                        return this;
+                }
+
+                /**
+                 * @param minimumChannelCount
+                 *            The minimumChannelCount to set.
+                 * @return This builder.
+                 */
+                public Builder setMinimumChannelCount( int minimumChannelCount ) {
+                        this.minimumChannelCount = minimumChannelCount;
+                        return this;
+                }
+
+                /**
+                 * @param maximumChannelCount
+                 *            The maximumChannelCount to set.
+                 * @return This builder.
+                 */
+                public Builder setMaximumChannelCount( int maximumChannelCount ) {
+                        this.maximumChannelCount = maximumChannelCount;
+                        return this;
+                }
+
+                /**
+                 * @param bufferMaximum
+                 *            The bufferMaximum to set.
+                 * @return This builder.
+                 */
+                public Builder setBufferMaximum( int bufferMaximum ) {
+                        this.bufferMaximum = bufferMaximum;
+                        return this;
+                }
+        }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2005 Dizan Vasquez
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.jenet;
+
+/**
+ * A source of time for a {@link Host}. The host reads it once per iteration of
+ * {@link Host#service service} and measures every timeout, round trip and
+ * bandwidth interval from that reading, so a clock which is moved by hand makes
+ * the protocol's timing deterministic.
+ */
+public interface IClock {
+
+        /**
+         * The monotonic clock of the virtual machine, which wall clock adjustments
+         * do not move.
+         */
+        public static final IClock SYSTEM = new IClock() {
+                public long nanoTime() {
+                        return System.nanoTime();
+                }
+        };
+
+        /**
+         * @return The current time in nanoseconds. Only the difference between two
+         *         readings is meaningful.
+         */
+        public long nanoTime();
+}
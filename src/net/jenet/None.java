@@ -26,6 +26,16 @@ package net.jenet;
  */
 class None extends Command {
 
+        static final ICommandFactory FACTORY = new ICommandFactory() {
+                public Command create() {
+                        return new None();
+                }
+        };
+
+        public None() {
+                super( NONE );
+        }
+
         /*
          * (non-Javadoc)
          * 
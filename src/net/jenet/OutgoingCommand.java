@@ -21,6 +21,7 @@
  */
 package net.jenet;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 
 /**
@@ -30,12 +31,28 @@ class OutgoingCommand implements IByteSize {
 
         protected List outgoingCommandList;
 
+        /**
+         * The previous command in the {@link OutgoingCommandList} holding this one.
+         */
+        protected OutgoingCommand previous;
+
+        /**
+         * The next command in the {@link OutgoingCommandList} holding this one.
+         */
+        protected OutgoingCommand next;
+
         protected int reliableSequenceNumber;
 
         protected int unreliableSequenceNumber;
 
+        /**
+         * The time in microseconds at which the command was last sent.
+         */
         protected int sentTime;
 
+        /**
+         * The time in microseconds after which the command is sent again.
+         */
         protected int roundTripTimeout;
 
         protected int roundTripTimeoutLimit;
@@ -48,6 +65,13 @@ class OutgoingCommand implements IByteSize {
 
         protected Packet packet;
 
+        /**
+         * The encoded command, without its payload, kept while a reliable command
+         * is in flight so that a retransmission copies it instead of encoding it
+         * again. Its limit is zero when the command has not been encoded.
+         */
+        protected ByteBuffer encodedCommand;
+
         /**
          * @return Returns the command.
          */
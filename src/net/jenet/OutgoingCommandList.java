@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2005 Dizan Vasquez
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.jenet;
+
+/**
+ * A list of outgoing commands linked through the commands themselves, so that
+ * a command is added or removed anywhere in the list in constant time. A
+ * command can be in at most one such list.
+ */
+class OutgoingCommandList {
+
+        protected OutgoingCommand first;
+
+        protected OutgoingCommand last;
+
+        protected int size;
+
+        /**
+         * Appends a command to the list.
+         * 
+         * @param outgoingCommand
+         *            The command to add.
+         */
+        void add( OutgoingCommand outgoingCommand ) {
+                outgoingCommand.previous = last;
+                outgoingCommand.next = null;
+                if ( last == null )
+                        first = outgoingCommand;
+                else
+                        last.next = outgoingCommand;
+                last = outgoingCommand;
+                size++;
+        }
+
+        /**
+         * Inserts a command after another one.
+         * 
+         * @param previous
+         *            A command in this list, or null to insert the command first.
+         * @param outgoingCommand
+         *            The command to insert.
+         */
+        void addAfter( OutgoingCommand previous, OutgoingCommand outgoingCommand ) {
+                outgoingCommand.previous = previous;
+                outgoingCommand.next = previous == null ? first : previous.next;
+                if ( outgoingCommand.next == null )
+                        last = outgoingCommand;
+                else
+                        outgoingCommand.next.previous = outgoingCommand;
+                if ( previous == null )
+                        first = outgoingCommand;
+                else
+                        previous.next = outgoingCommand;
+                size++;
+        }
+
+        /**
+         * Unlinks all the commands.
+         */
+        void clear() {
+                OutgoingCommand outgoingCommand = first;
+                OutgoingCommand nextCommand;
+
+                while ( outgoingCommand != null ) {
+                        nextCommand = outgoingCommand.next;
+                        outgoingCommand.previous = null;
+                        outgoingCommand.next = null;
+                        outgoingCommand = nextCommand;
+                }
+                first = null;
+                last = null;
+                size = 0;
+        }
+
+        /**
+         * @return The first command in the list, or null if it is empty.
+         */
+        OutgoingCommand getFirst() {
+                return first;
+        }
+
+        /**
+         * @return The last command in the list, or null if it is empty.
+         */
+        OutgoingCommand getLast() {
+                return last;
+        }
+
+        boolean isEmpty() {
+                return first == null;
+        }
+
+        /**
+         * Removes a command from the list.
+         * 
+         * @param outgoingCommand
+         *            A command in this list.
+         */
+        void remove( OutgoingCommand outgoingCommand ) {
+                if ( outgoingCommand.previous == null )
+                        first = outgoingCommand.next;
+                else
+                        outgoingCommand.previous.next = outgoingCommand.next;
+                if ( outgoingCommand.next == null )
+                        last = outgoingCommand.previous;
+                else
+                        outgoingCommand.next.previous = outgoingCommand.previous;
+                outgoingCommand.previous = null;
+                outgoingCommand.next = null;
+                size--;
+        }
+
+        int size() {
+                return size;
+        }
+}
@@ -21,6 +21,7 @@
  */
 package net.jenet;
 
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 
 import org.apache.commons.lang.builder.ToStringBuilder;
@@ -51,10 +52,31 @@ public class Packet implements IBufferable {
 
         protected int dataLength;
 
+        protected PooledBuffer buffer;
+
+        protected PacketPool pool;
+
+        protected boolean free;
+
         private Packet() {
                 super();
         }
 
+        /**
+         * Creates an idle packet owned by a {@link PacketPool}.
+         * 
+         * @param pool
+         *            The pool this packet belongs to.
+         * @param data
+         *            The storage of this packet within one of the pool's slabs.
+         */
+        Packet( PacketPool pool, ByteBuffer data ) {
+                super();
+                this.pool = pool;
+                this.data = data;
+                this.free = true;
+        }
+
         /**
          * Creates a new Packet.
          * The constructor allocates a new packet and allocates a
@@ -70,6 +92,121 @@ public class Packet implements IBufferable {
                 this.dataLength = dataLength;
                 this.flags = flags;
         }
+
+        /**
+         * Creates a read-only packet over the next <code>dataLength</code> bytes
+         * of a received datagram, without copying them. The packet keeps a
+         * reference to the datagram's buffer until it is released or detached.
+         * 
+         * @param buffer
+         *            The buffer holding the datagram, positioned at the payload.
+         * @param dataLength
+         *            The size in bytes of the payload.
+         * @param flags
+         *            The flags of the new packet.
+         * @return A packet sharing the payload's bytes.
+         */
+        static Packet view( PooledBuffer buffer, int dataLength, int flags ) {
+                Packet result = new Packet();
+                ByteBuffer source = buffer.getData();
+                ByteBuffer slice = source.slice();
+                slice.limit( dataLength );
+                source.position( source.position() + dataLength );
+                result.data = slice.asReadOnlyBuffer();
+                result.data.position( dataLength );
+                result.dataLength = dataLength;
+                result.flags = flags;
+                result.buffer = buffer;
+                buffer.retain();
+                return result;
+        }
+
+        /**
+         * Copies the data of a view into storage owned by this packet, so that
+         * the datagram it was received in can be recycled.
+         */
+        void detach() {
+                if ( buffer == null )
+                        return;
+                ByteBuffer source = data.duplicate();
+                source.position( 0 );
+                data = ByteBuffer.allocateDirect( dataLength );
+                data.put( source );
+                buffer.release();
+                buffer = null;
+        }
+
+        /**
+         * Returns true if this packet belongs to a {@link PacketPool}.
+         * 
+         * @return Whether this packet is pooled.
+         */
+        public boolean isPooled() {
+                return pool != null;
+        }
+
+        /**
+         * Returns true if this packet shares the buffer of a received datagram.
+         * 
+         * @return Whether this packet is a view.
+         */
+        public boolean isView() {
+                return buffer != null;
+        }
+
+        /**
+         * Releases the resources held by this packet. A packet received while
+         * its host delivers zero-copy views shares the buffer of the datagram
+         * that carried it, and that buffer is only recycled once every packet
+         * it holds has been released. The data of a released view must not be
+         * used any more.
+         * <p>
+         * A pooled packet goes back to its pool by itself once every command
+         * sending it has been acknowledged or dropped, so this method only has
+         * to be called for pooled packets which are not sent, such as received
+         * ones. Releasing a packet which is still queued for sending has no
+         * effect.
+         */
+        public void release() {
+                if ( buffer != null ) {
+                        buffer.release();
+                        buffer = null;
+                } else if ( referenceCount == 0 )
+                        recycle();
+        }
+
+        void recycle() {
+                if ( pool == null || free )
+                        return;
+                free = true;
+                pool.recycle( this );
+        }
+
+        /**
+         * Drops a reference held by an outgoing command. A pooled packet goes back
+         * to its pool when no references are left.
+         */
+        void removeReference() {
+                if ( referenceCount > 0 && --referenceCount == 0 )
+                        recycle();
+        }
+
+        /**
+         * Prepares a pooled packet to be handed out again.
+         * 
+         * @param dataLength
+         *            The size in bytes of the packet.
+         * @param flags
+         *            The flags of the packet.
+         */
+        void reuse( int dataLength, int flags ) {
+                data.clear();
+                data.limit( dataLength );
+                this.dataLength = dataLength;
+                this.flags = flags;
+                referenceCount = 0;
+                free = false;
+        }
         
         /**
          * Copies this packet's data into the given buffer.
@@ -78,9 +215,10 @@ public class Packet implements IBufferable {
          */
         public void toBuffer( ByteBuffer buffer ) {
                 data.flip();
-                for ( int i = 0; i < dataLength; i++ ) {
-                        buffer.put( data.get() );
-                }
+                int limit = data.limit();
+                data.limit( dataLength );
+                buffer.put( data );
+                data.limit( limit );
         }
 
         /**
@@ -95,13 +233,11 @@ public class Packet implements IBufferable {
         public void toBuffer( ByteBuffer buffer, int offset, int length ) {
                 int position = data.position();
                 int limit = data.limit();
-                data.flip();
+                data.limit( offset + length );
                 data.position( offset );
-                for ( int i = 0; i < length; i++ ) {
-                        buffer.put( data.get() );
-                }
-                data.position( position );
+                buffer.put( data );
                 data.limit( limit );
+                data.position( position );
         }
 
         /**
@@ -111,9 +247,8 @@ public class Packet implements IBufferable {
          */
         public void fromBuffer( ByteBuffer buffer ) {
                 data.clear();
-                for ( int i = 0; i < dataLength; i++ ) {
-                        data.put( buffer.get() );
-                }
+                data.limit( dataLength );
+                copy( buffer, dataLength );
         }
         
         /**
@@ -127,13 +262,24 @@ public class Packet implements IBufferable {
          */
         public void fromBuffer( ByteBuffer buffer, int fragmentOffset, int length ) {
                 data.position( fragmentOffset );
-                for ( int i = 0; i < length; i++ ) {
-                        data.put( buffer.get() );
-                }
+                copy( buffer, length );
                 data.position( dataLength );
                 data.limit( dataLength );
         }
 
+        /**
+         * Moves <code>length</code> bytes from the given buffer into this packet's
+         * data in a single bulk transfer.
+         */
+        private void copy( ByteBuffer buffer, int length ) {
+                if ( buffer.remaining() < length )
+                        throw new BufferUnderflowException();
+                int limit = buffer.limit();
+                buffer.limit( buffer.position() + length );
+                data.put( buffer );
+                buffer.limit( limit );
+        }
+
         /**
          * Returs size of this packet.
          * @return Size in bytes of this packet
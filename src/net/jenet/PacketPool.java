@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2005 Dizan Vasquez
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.jenet;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ * A pool of reusable packets. Packets are grouped in power of two size classes
+ * and the storage of each class is carved out of slabs, large buffers shared
+ * by many packets, so that steady state sending does not allocate.
+ * <p>
+ * A packet taken from the pool with {@link #acquire acquire} goes back to it
+ * automatically once every command sending it has been acknowledged or
+ * dropped. A packet that is never sent must be handed back with
+ * {@link Packet#release Packet.release}.
+ */
+public class PacketPool {
+
+        /**
+         * The size in bytes of the smallest size class.
+         */
+        public static final int MINIMUM_CLASS_SIZE = 16;
+
+        /**
+         * The size in bytes of the largest size class. Bigger packets are not
+         * pooled.
+         */
+        public static final int MAXIMUM_CLASS_SIZE = 65536;
+
+        protected boolean direct;
+
+        protected ArrayList<ArrayDeque<Packet>> freePackets = new ArrayList<ArrayDeque<Packet>>();
+
+        protected int slabSize;
+
+        /**
+         * Creates a new pool.
+         * 
+         * @param direct
+         *            Whether the slabs are direct or heap buffers.
+         * @param slabSize
+         *            The size in bytes of each slab. Size classes bigger than the
+         *            slab get a slab per packet.
+         */
+        public PacketPool( boolean direct, int slabSize ) {
+                super();
+                this.direct = direct;
+                this.slabSize = slabSize;
+                for ( int size = MINIMUM_CLASS_SIZE; size <= MAXIMUM_CLASS_SIZE; size <<= 1 )
+                        freePackets.add( new ArrayDeque<Packet>() );
+        }
+
+        static int sizeClass( int dataLength ) {
+                if ( dataLength <= MINIMUM_CLASS_SIZE )
+                        return 0;
+                return 32 - Integer.numberOfLeadingZeros( dataLength - 1 )
+                                - Integer.numberOfTrailingZeros( MINIMUM_CLASS_SIZE );
+        }
+
+        /**
+         * Takes a packet from the pool. The packet's data is empty, with room for
+         * <code>dataLength</code> bytes.
+         * 
+         * @param dataLength
+         *            The size in bytes of the packet.
+         * @param flags
+         *            The flags of the packet.
+         * @return A packet ready to be filled and sent.
+         */
+        public Packet acquire( int dataLength, int flags ) {
+                if ( dataLength > MAXIMUM_CLASS_SIZE )
+                        return new Packet( dataLength, flags );
+
+                ArrayDeque<Packet> packets = freePackets.get( sizeClass( dataLength ) );
+                if ( packets.isEmpty() )
+                        allocateSlab( sizeClass( dataLength ), packets );
+
+                Packet result = packets.pop();
+                result.reuse( dataLength, flags );
+                return result;
+        }
+
+        void allocateSlab( int sizeClass, ArrayDeque<Packet> packets ) {
+                int classSize = MINIMUM_CLASS_SIZE << sizeClass;
+                int count = Math.max( 1, slabSize / classSize );
+                ByteBuffer slab = direct ? ByteBuffer.allocateDirect( classSize * count ) : ByteBuffer
+                                .allocate( classSize * count );
+
+                for ( int i = 0; i < count; i++ ) {
+                        slab.limit( ( i + 1 ) * classSize );
+                        slab.position( i * classSize );
+                        packets.push( new Packet( this, slab.slice() ) );
+                }
+        }
+
+        /**
+         * Returns the number of idle packets in the size class fitting
+         * <code>dataLength</code> bytes.
+         * 
+         * @param dataLength
+         *            The size in bytes of a packet.
+         * @return The number of packets of that size class ready to be reused.
+         */
+        int getSize( int dataLength ) {
+                return freePackets.get( sizeClass( dataLength ) ).size();
+        }
+
+        /**
+         * @return Returns whether this pool allocates direct buffers.
+         */
+        public boolean isDirect() {
+                return direct;
+        }
+
+        /**
+         * Puts a packet back in its size class.
+         * 
+         * @param packet
+         *            A packet acquired from this pool with no references left.
+         */
+        void recycle( Packet packet ) {
+                freePackets.get( sizeClass( packet.getData().capacity() ) ).push( packet );
+        }
+}
@@ -24,13 +24,9 @@ package net.jenet;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Map;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 
-import org.apache.commons.configuration.PropertiesConfiguration;
 import org.apache.commons.lang.builder.ToStringBuilder;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -51,34 +47,95 @@ public class Peer {
                 DISCONNECTED, CONNECTING, ACKNOWLEDGING_CONNECT, CONNECTED, DISCONNECTING, ACKNOWLEDGING_DISCONNECT, ZOMBIE
         }
 
-        private class Acknowledgement {
+        /**
+         * The number of ints of each pending acknowledgement: the channel, the
+         * sequence number and the sent time of the command acknowledged, its
+         * flags, and the time in microseconds at which it was received.
+         */
+        static final int ACKNOWLEDGEMENT_SIZE = 5;
 
-                protected Command command;
+        /**
+         * The flag of an acknowledgement of a disconnection.
+         */
+        static final int ACKNOWLEDGEMENT_DISCONNECT = 1;
 
-                protected int sentTime;
+        static final int INITIAL_ACKNOWLEDGEMENTS = 32;
 
-                public Command getCommand() {
-                        return command;
-                }
+        private static Log LOG = LogFactory.getLog( Peer.class );
 
-                public int getSentTime() {
-                        return sentTime;
-                }
-        }
+        /**
+         * Whether this peer is in its host's dispatch queue.
+         */
+        protected boolean needsDispatch;
 
-        private static Log LOG = LogFactory.getLog( Peer.class );
+        /**
+         * The next peer in its host's dispatch queue.
+         */
+        protected Peer nextDispatch;
+
+        /**
+         * Whether this peer is in its host's send queue.
+         */
+        protected boolean needsSend;
+
+        /**
+         * The timer of this peer's next retransmission, ping or send of held
+         * acknowledgements.
+         */
+        protected Timer timer = new Timer( this );
+
+        /**
+         * The next peer in its host's send queue.
+         */
+        protected Peer nextSend;
+
+        /**
+         * The acknowledgements waiting to be sent, a ring of
+         * <code>ACKNOWLEDGEMENT_SIZE</code> ints per acknowledgement whose length
+         * is a power of two.
+         */
+        protected int[] acknowledgements = new int[INITIAL_ACKNOWLEDGEMENTS * ACKNOWLEDGEMENT_SIZE];
+
+        protected int acknowledgementCount;
 
-        protected ConcurrentLinkedQueue<Acknowledgement> acknowledgements = new ConcurrentLinkedQueue<Acknowledgement>();
+        protected int firstAcknowledgement;
+
+        /**
+         * The time at which the oldest of the pending acknowledgements was queued.
+         */
+        protected int acknowledgementTime;
 
         protected InetSocketAddress address;
 
+        /**
+         * The capabilities the remote host announced when connecting, from the
+         * <code>CommandHeader.CAPABILITY_*</code> bits.
+         */
+        protected byte capabilities;
+
         protected int challenge;
 
         protected int channelCount;
 
-        protected Map<Byte, Channel> channels;
+        /**
+         * The channels of this peer, indexed by channel ID and created when first
+         * used.
+         */
+        protected Channel[] channels;
+
+        /**
+         * The channel of the commands managing the connection itself, which use
+         * channel ID <code>0xFF</code>.
+         */
+        protected Channel systemChannel;
 
-        protected PropertiesConfiguration configuration;
+        /**
+         * One bit per channel, set while the channel has incoming commands, so that
+         * dispatching only visits channels with something to deliver.
+         */
+        protected long[] incomingChannels;
+
+        protected HostConfig config;
 
         protected int highestRoundTripTimeVariance;
 
@@ -106,6 +163,9 @@ public class Peer {
 
         protected short mtu;
 
+        /**
+         * The millisecond by which the first sent reliable command times out.
+         */
         protected int nextTimeout;
 
         protected int outgoingBandwidth;
@@ -116,11 +176,11 @@ public class Peer {
 
         protected short outgoingPeerID;
 
-        protected ConcurrentLinkedQueue<OutgoingCommand> outgoingReliableCommands = new ConcurrentLinkedQueue<OutgoingCommand>();
+        protected OutgoingCommandList outgoingReliableCommands = new OutgoingCommandList();
 
         protected int outgoingReliableSequenceNumber;
 
-        protected ConcurrentLinkedQueue<OutgoingCommand> outgoingUnreliableCommands = new ConcurrentLinkedQueue<OutgoingCommand>();
+        protected OutgoingCommandList outgoingUnreliableCommands = new OutgoingCommandList();
 
         protected int outgoingUnsequencedGroup;
 
@@ -150,17 +210,20 @@ public class Peer {
 
         protected int reliableDataInTransit;
 
-        protected int roundTripTime;
-
         /**
-         * < mean round trip time (RTT), in milliseconds, between sending a reliable
-         * packet and receiving its acknowledgement
+         * The mean round trip time (RTT), in microseconds, between sending a
+         * reliable packet and receiving its acknowledgement. Like the other round
+         * trip times of the peer it is kept in microseconds whatever the unit of the
+         * sent times, so retransmission timeouts follow round trips shorter than a
+         * millisecond.
          */
+        protected int roundTripTime;
+
         protected int roundTripTimeVariance;
 
-        protected ConcurrentLinkedQueue<OutgoingCommand> sentReliableCommands = new ConcurrentLinkedQueue<OutgoingCommand>();
+        protected OutgoingCommandList sentReliableCommands = new OutgoingCommandList();
 
-        protected ConcurrentLinkedQueue<OutgoingCommand> sentUnreliableCommands = new ConcurrentLinkedQueue<OutgoingCommand>();
+        protected OutgoingCommandList sentUnreliableCommands = new OutgoingCommandList();
 
         protected STATE state;
 
@@ -177,32 +240,37 @@ public class Peer {
                 init( host );
                 this.address = address;
                 state = STATE.CONNECTING;
-                channels = new HashMap<Byte, Channel>();
+                setChannelCount( channelCount );
                 challenge = (int) ( Math.random() * Integer.MAX_VALUE );
-                unsequencedWindow = new int[configuration.getInt( "ENET_PEER_UNSEQUENCED_WINDOW_SIZE" ) / 32];
+                unsequencedWindow = new int[config.unsequencedWindowSize / 32];
 
                 if ( host.getOutgoingBandwidth() == 0 )
-                        windowSize = configuration.getInt( "ENET_PROTOCOL_MAXIMUM_WINDOW_SIZE" );
+                        windowSize = config.maximumWindowSize;
                 else
-                        windowSize = host.getOutgoingBandwidth() / configuration.getInt( "ENET_PEER_WINDOW_SIZE_SCALE" )
-                                        * configuration.getInt( "ENET_PROTOCOL_MINIMUM_WINDOW_SIZE" );
+                        windowSize = host.getOutgoingBandwidth() / config.windowSizeScale
+                                        * config.minimumWindowSize;
 
-                if ( windowSize < configuration.getInt( "ENET_PROTOCOL_MINIMUM_WINDOW_SIZE" ) )
-                        windowSize = configuration.getInt( "ENET_PROTOCOL_MINIMUM_WINDOW_SIZE" );
-                else if ( windowSize > configuration.getInt( "ENET_PROTOCOL_MAXIMUM_WINDOW_SIZE" ) )
-                        windowSize = configuration.getInt( "ENET_PROTOCOL_MAXIMUM_WINDOW_SIZE" );
+                if ( windowSize < config.minimumWindowSize )
+                        windowSize = config.minimumWindowSize;
+                else if ( windowSize > config.maximumWindowSize )
+                        windowSize = config.maximumWindowSize;
         }
 
         Event checkTimeouts() {
                 Event result = new Event();
-                OutgoingCommand outgoingCommand = null;
-                for ( Iterator<OutgoingCommand> currentCommand = sentReliableCommands.iterator(); currentCommand
-                                .hasNext(); ) {
-                        outgoingCommand = currentCommand.next();
-
-                        if ( Time.difference( host.getTimeCurrent(), outgoingCommand.getSentTime() ) < outgoingCommand
+                OutgoingCommand outgoingCommand;
+                OutgoingCommand nextCommand;
+                for ( outgoingCommand = sentReliableCommands.getFirst(); outgoingCommand != null;
+                                outgoingCommand = nextCommand ) {
+                        nextCommand = outgoingCommand.next;
+
+                        /*
+                         * The commands are in order of deadline, so the first one which
+                         * has not timed out ends the search.
+                         */
+                        if ( host.getTimeCurrentMicros() - outgoingCommand.getSentTime() < outgoingCommand
                                         .getRoundTripTimeout() )
-                                continue;
+                                break;
 
                         if ( outgoingCommand.getRoundTripTimeout() >= outgoingCommand.getRoundTripTimeoutLimit() ) {
                                 reset();
@@ -217,12 +285,15 @@ public class Peer {
                         packetsLost++;
 
                         outgoingCommand.setRoundTripTimeout( outgoingCommand.getRoundTripTimeout() * 2 );
+                        sentReliableCommands.remove( outgoingCommand );
+                        getChannel( outgoingCommand.getCommand().getHeader().getChannelID() ).removeSentReliableCommand(
+                                        outgoingCommand.getReliableSequenceNumber() );
                         outgoingReliableCommands.add( outgoingCommand );
-                        currentCommand.remove();
-
-                        if ( sentReliableCommands.size() == 1 )
-                                nextTimeout = outgoingCommand.getSentTime() + outgoingCommand.getRoundTripTimeout();
                 }
+
+                outgoingCommand = sentReliableCommands.getFirst();
+                if ( outgoingCommand != null )
+                        nextTimeout = host.timerDeadline( outgoingCommand.getSentTime() + outgoingCommand.getRoundTripTimeout() );
                 return result;
         }
 
@@ -278,18 +349,44 @@ public class Peer {
         }
 
         boolean fitsInPacket( IByteSize object ) {
-                boolean fits = host.getCommandCount() < configuration
-                                .getInt( "ENET_PROTOCOL_MAXIMUM_PACKET_COMMANDS" );
-                fits &= host.getBufferCount() < configuration.getInt( "ENET_BUFFER_MAXIMUM" );
-                fits &= mtu - host.getPacketSize() >= object.byteSize();
+                return fitsInPacket( object.byteSize() );
+        }
+
+        boolean fitsInPacket( int byteSize ) {
+                boolean fits = host.getCommandCount() < config.maximumPacketCommands;
+                fits &= host.getBufferCount() < config.bufferMaximum;
+                fits &= mtu - host.getPacketSize() >= byteSize;
                 return fits;
         }
 
         /**
-         * @return Returns the acknowledgements.
+         * @return Returns the number of acknowledgements waiting to be sent.
          */
-        ConcurrentLinkedQueue<Acknowledgement> getAcknowledgements() {
-                return acknowledgements;
+        int getAcknowledgementCount() {
+                return acknowledgementCount;
+        }
+
+        /**
+         * @return Returns the acknowledgementTime.
+         */
+        int getAcknowledgementTime() {
+                return acknowledgementTime;
+        }
+
+        /**
+         * Decides whether the pending acknowledgements are sent now or held for a
+         * later datagram. They are held only while connected, until there are
+         * <code>acknowledgementThreshold</code> of them or the oldest has waited
+         * <code>acknowledgementDelay</code>, and never when commands are waiting
+         * to carry them.
+         * 
+         * @return Whether there are acknowledgements to send now.
+         */
+        boolean acknowledgementsDue() {
+                return acknowledgementCount > 0
+                                && ( state != STATE.CONNECTED || acknowledgementCount >= config.acknowledgementThreshold
+                                                || Time.difference( host.getTimeCurrent(), acknowledgementTime ) >= config.acknowledgementDelay
+                                                || !outgoingReliableCommands.isEmpty() || !outgoingUnreliableCommands.isEmpty() );
         }
 
         /**
@@ -301,6 +398,13 @@ public class Peer {
                 return address;
         }
 
+        /**
+         * @return Returns the capabilities.
+         */
+        byte getCapabilities() {
+                return capabilities;
+        }
+
         /**
          * @return Returns the challenge.
          */
@@ -318,17 +422,25 @@ public class Peer {
         }
 
         /**
-         * @return Returns the channels.
+         * Returns a channel of this peer without creating it.
+         * 
+         * @param channelID
+         *            the channel ID, <code>0xFF</code> for the system channel.
+         * @return the channel, or <code>null</code> if it does not exist or has
+         *         not been used yet.
          */
-        Map<Byte, Channel> getChannels() {
-                return channels;
+        Channel getChannel( byte channelID ) {
+                if ( channelID == (byte) 0xFF )
+                        return systemChannel;
+                int index = channelID & 0xFF;
+                return index < channels.length ? channels[index] : null;
         }
 
         /**
          * @return Returns the configuration.
          */
-        PropertiesConfiguration getConfiguration() {
-                return configuration;
+        HostConfig getConfig() {
+                return config;
         }
 
         /**
@@ -399,7 +511,7 @@ public class Peer {
          * @return The time in milliseconds.
          */
         public int getLastRoundTripTime() {
-                return lastRoundTripTime;
+                return lastRoundTripTime / 1000;
         }
 
         /**
@@ -470,7 +582,7 @@ public class Peer {
         /**
          * @return Returns the outgoingReliableCommands.
          */
-        ConcurrentLinkedQueue<OutgoingCommand> getOutgoingReliableCommands() {
+        OutgoingCommandList getOutgoingReliableCommands() {
                 return outgoingReliableCommands;
         }
 
@@ -484,7 +596,7 @@ public class Peer {
         /**
          * @return Returns the outgoingUnreliableCommands.
          */
-        ConcurrentLinkedQueue<OutgoingCommand> getOutgoingUnreliableCommands() {
+        OutgoingCommandList getOutgoingUnreliableCommands() {
                 return outgoingUnreliableCommands;
         }
 
@@ -597,6 +709,16 @@ public class Peer {
          * @return the time in milliseconds.
          */
         public int getRoundTripTime() {
+                return roundTripTime / 1000;
+        }
+
+        /**
+         * Returns mean round trip time for reliable packages.
+         * 
+         * @see #getRoundTripTime
+         * @return the time in microseconds.
+         */
+        public int getRoundTripTimeMicros() {
                 return roundTripTime;
         }
 
@@ -610,14 +732,14 @@ public class Peer {
         /**
          * @return Returns the sentReliableCommands.
          */
-        ConcurrentLinkedQueue<OutgoingCommand> getSentReliableCommands() {
+        OutgoingCommandList getSentReliableCommands() {
                 return sentReliableCommands;
         }
 
         /**
          * @return Returns the sentUnreliableCommands.
          */
-        ConcurrentLinkedQueue<OutgoingCommand> getSentUnreliableCommands() {
+        OutgoingCommandList getSentUnreliableCommands() {
                 return sentUnreliableCommands;
         }
 
@@ -644,7 +766,7 @@ public class Peer {
 
         void init( Host host ) {
                 this.host = host;
-                this.configuration = host.getConfiguration();
+                this.config = host.getConfig();
                 outgoingPeerID = (short) 0xFFFF;
                 challenge = 0;
                 address = new InetSocketAddress( (InetAddress) null, 0 );
@@ -665,25 +787,26 @@ public class Peer {
                 packetsLost = 0;
                 packetLoss = 0;
                 packetLossVariance = 0;
-                packetThrottle = configuration.getInt( "ENET_PEER_DEFAULT_PACKET_THROTTLE" );
-                packetThrottleLimit = configuration.getInt( "ENET_PEER_PACKET_THROTTLE_SCALE" );
+                packetThrottle = config.defaultPacketThrottle;
+                packetThrottleLimit = config.packetThrottleScale;
                 packetThrottleCounter = 0;
                 packetThrottleEpoch = 0;
-                packetThrottleAcceleration = configuration.getInt( "ENET_PEER_PACKET_THROTTLE_ACCELERATION" );
-                packetThrottleDeceleration = configuration.getInt( "ENET_PEER_PACKET_THROTTLE_DECELERATION" );
-                packetThrottleInterval = configuration.getInt( "ENET_PEER_PACKET_THROTTLE_INTERVAL" );
-                lastRoundTripTime = configuration.getInt( "ENET_PEER_DEFAULT_ROUND_TRIP_TIME" );
-                lowestRoundTripTime = configuration.getInt( "ENET_PEER_DEFAULT_ROUND_TRIP_TIME" );
+                packetThrottleAcceleration = config.packetThrottleAcceleration;
+                packetThrottleDeceleration = config.packetThrottleDeceleration;
+                packetThrottleInterval = config.packetThrottleInterval;
+                lastRoundTripTime = config.defaultRoundTripTime * 1000;
+                lowestRoundTripTime = config.defaultRoundTripTime * 1000;
                 lastRoundTripTimeVariance = 0;
                 highestRoundTripTimeVariance = 0;
-                roundTripTime = configuration.getInt( "ENET_PEER_DEFAULT_ROUND_TRIP_TIME" );
+                roundTripTime = config.defaultRoundTripTime * 1000;
                 roundTripTimeVariance = 0;
                 mtu = host.getMtu();
                 reliableDataInTransit = 0;
                 outgoingReliableSequenceNumber = 0;
-                windowSize = configuration.getInt( "ENET_PROTOCOL_MAXIMUM_WINDOW_SIZE" );
+                windowSize = config.maximumWindowSize;
                 incomingUnsequencedGroup = 0;
                 outgoingUnsequencedGroup = 0;
+                capabilities = 0;
         }
 
         /**
@@ -746,15 +869,41 @@ public class Peer {
         }
 
         /**
+         * Queues an acknowledgement of a received command. Only the fields the
+         * acknowledgement is made of are kept, so the command may be reused as
+         * soon as this returns.
+         * 
          * @param command
+         *            The command received.
          * @param sentTime
+         *            The time at which the datagram holding it was sent.
          */
         void queueAcknowledgement( Command command, int sentTime ) {
-                Acknowledgement acknowledgement = new Acknowledgement();
+                int capacity = acknowledgements.length / ACKNOWLEDGEMENT_SIZE;
+                int index;
+
+                if ( acknowledgementCount == capacity ) {
+                        int[] grown = new int[acknowledgements.length * 2];
+                        int first = firstAcknowledgement * ACKNOWLEDGEMENT_SIZE;
+                        System.arraycopy( acknowledgements, first, grown, 0, acknowledgements.length - first );
+                        System.arraycopy( acknowledgements, 0, grown, acknowledgements.length - first, first );
+                        acknowledgements = grown;
+                        firstAcknowledgement = 0;
+                        capacity *= 2;
+                }
+
+                if ( acknowledgementCount == 0 )
+                        acknowledgementTime = host.getTimeCurrent();
+
                 outgoingDataTotal += command.byteSize();
-                acknowledgement.sentTime = sentTime;
-                acknowledgement.command = command;
-                acknowledgements.add( acknowledgement );
+                index = ( ( firstAcknowledgement + acknowledgementCount ) & ( capacity - 1 ) ) * ACKNOWLEDGEMENT_SIZE;
+                acknowledgements[index] = command.getHeader().getChannelID();
+                acknowledgements[index + 1] = command.getHeader().getReliableSequenceNumber();
+                acknowledgements[index + 2] = sentTime;
+                acknowledgements[index + 3] = command.getCode() == Command.DISCONNECT ? ACKNOWLEDGEMENT_DISCONNECT : 0;
+                acknowledgements[index + 4] = host.getTimeReceivedMicros();
+                acknowledgementCount++;
+                host.queueSend( this );
         }
 
         /**
@@ -763,23 +912,26 @@ public class Peer {
          * @param fragmentCount
          */
         IncomingCommand queueIncomingCommand( Command command, Packet packet, int fragmentCount ) {
-                Channel channel = selectChannel( command.getHeader().getChannelID() );
-                LinkedList<IncomingCommand> commandList = null;
+                byte channelID = command.getHeader().getChannelID();
+                Channel channel = selectChannel( channelID );
+                ArrayDeque<IncomingCommand> commandList = null;
                 int unreliableSequenceNumber = 0;
                 boolean freePacket = false;
-                if ( command instanceof SendFragment || command instanceof SendReliable ) {
-                        commandList = channel.getIncomingReliableCommands();
-                        for ( IncomingCommand incomingCommand : channel.getIncomingReliableCommands() )
-                                if ( incomingCommand.getReliableSequenceNumber() <= command.getHeader() 
-                                                .getReliableSequenceNumber() ) {
-                                        if ( incomingCommand.getReliableSequenceNumber() < command.getHeader()
-                                                        .getReliableSequenceNumber() )
-                                                freePacket = false;
-                                        else
-                                                freePacket = true;
-                                        break;
-                                }
-                } else if ( command instanceof SendUnreliable ) {
+                /*
+                 * Packets are only delivered on the channels the connection was made
+                 * with, never on the system channel.
+                 */
+                switch ( channelID == (byte) 0xFF ? Command.NONE : command.getCode() ) {
+                case Command.SEND_FRAGMENT:
+                case Command.SEND_RELIABLE:
+                        if ( command.getHeader().getReliableSequenceNumber() <= channel
+                                        .getIncomingReliableSequenceNumber() )
+                                freePacket = true;
+                        else if ( channel.getIncomingReliableCommand( command.getHeader()
+                                        .getReliableSequenceNumber() ) != null )
+                                freePacket = true;
+                        break;
+                case Command.SEND_UNRELIABLE:
                         commandList = channel.getIncomingUnreliableCommands();
                         unreliableSequenceNumber = ( (SendUnreliable) command ).getUnreliableSequenceNumber();
                         if ( command.getHeader().getReliableSequenceNumber() < channel
@@ -796,34 +948,70 @@ public class Peer {
                                                         freePacket = true;
                                                 break;
                                         }
-                } else if ( command instanceof SendUnsequenced ) {
+                        break;
+                case Command.SEND_UNSEQUENCED:
                         commandList = channel.getIncomingUnreliableCommands();
-                } else {
+                        break;
+                default:
                         freePacket = true;
+                        break;
+                }
+
+                if ( freePacket ) {
+                        if ( packet != null )
+                                packet.release();
+                        return null;
                 }
 
-                if ( !freePacket ) {
-                        IncomingCommand incomingCommand = new IncomingCommand();
-                        incomingCommand.setReliableSequenceNumber( command.getHeader().getReliableSequenceNumber() );
-                        incomingCommand.setUnreliableSequenceNumber( unreliableSequenceNumber );
+                /*
+                 * A packet that can not be delivered as soon as it is queued would keep
+                 * its datagram's buffer away from the receive pool, so views are copied
+                 * before being held back.
+                 */
+                if ( packet != null && packet.isView() ) {
+                        if ( commandList == null ) {
+                                if ( command.getHeader().getReliableSequenceNumber() != channel
+                                                .getIncomingReliableSequenceNumber() + 1 )
+                                        packet.detach();
+                        } else if ( command.getHeader().getReliableSequenceNumber() > channel
+                                        .getIncomingReliableSequenceNumber() )
+                                packet.detach();
+                }
+
+                IncomingCommand incomingCommand = host.getCommandPool().acquireIncomingCommand();
+                incomingCommand.setReliableSequenceNumber( command.getHeader().getReliableSequenceNumber() );
+                incomingCommand.setUnreliableSequenceNumber( unreliableSequenceNumber );
+                /*
+                 * Received commands belong to the host's decoder and are overwritten by
+                 * the next datagram. Only reassembly looks queued commands up again, and
+                 * it queues a command of its own.
+                 */
+                if ( command.getCode() == Command.SEND_FRAGMENT )
                         incomingCommand.setCommand( command );
-                        incomingCommand.setFragmentCount( fragmentCount );
-                        incomingCommand.setFragmentsRemaining( fragmentCount );
-                        incomingCommand.setPacket( packet );
-                        incomingCommand.setFragments( null );
+                incomingCommand.setFragmentCount( fragmentCount );
+                incomingCommand.setFragmentsRemaining( fragmentCount );
+                incomingCommand.setPacket( packet );
+                incomingCommand.setFragments( null );
 
-                        if ( fragmentCount > 0 )
-                                incomingCommand.setFragments( new int[fragmentCount + 31 / 32] );
+                if ( fragmentCount > 0 )
+                        incomingCommand.setFragments( new int[( fragmentCount + 31 ) / 32] );
 
+                if ( commandList != null )
                         commandList.add( incomingCommand );
-                        return incomingCommand;
+                else if ( !channel.addIncomingReliableCommand( incomingCommand ) ) {
+                        if ( packet != null )
+                                packet.release();
+                        host.getCommandPool().recycle( incomingCommand );
+                        return null;
                 }
-                return null;
+                incomingChannels[( channelID & 0xFF ) >> 6] |= 1L << channelID;
+                host.queueDispatch( this );
+                return incomingCommand;
         }
 
         OutgoingCommand queueOutgoingCommand( Command command, Packet packet, int offset, short length ) {
                 Channel channel = selectChannel( command.getHeader().getChannelID() );
-                OutgoingCommand outgoingCommand = new OutgoingCommand();
+                OutgoingCommand outgoingCommand = host.getCommandPool().acquireOutgoingCommand();
                 outgoingDataTotal += command.getHeader().getCommandLength() + length;
 
                 if ( command.getHeader().getChannelID() == (byte) ( 0xFF ) ) {
@@ -862,18 +1050,43 @@ public class Peer {
                         outgoingReliableCommands.add( outgoingCommand );
                 else 
                         outgoingUnreliableCommands.add( outgoingCommand );
+                host.queueSend( this );
 
                 return outgoingCommand;
         }
 
+        /**
+         * @return Whether any channel of this peer has incoming commands left.
+         */
+        boolean hasIncomingCommands() {
+                for ( long word : incomingChannels )
+                        if ( word != 0 )
+                                return true;
+                return false;
+        }
+
+        /**
+         * @return Whether this peer has acknowledgements or commands to send.
+         */
+        boolean hasOutgoingCommands() {
+                return acknowledgementsDue() || !outgoingReliableCommands.isEmpty()
+                                || !outgoingUnreliableCommands.isEmpty();
+        }
+
         Packet receive( byte channelID ) {
                 Channel channel = selectChannel( channelID );
+                Packet packet = receive( channel );
+
+                if ( !channel.hasIncomingReliableCommands() && channel.getIncomingUnreliableCommands().isEmpty() )
+                        incomingChannels[( channelID & 0xFF ) >> 6] &= ~( 1L << channelID );
+                return packet;
+        }
+
+        private Packet receive( Channel channel ) {
                 IncomingCommand incomingCommand = null;
                 Packet packet;
-                LinkedList<IncomingCommand> listRemove = null;
 
                 if ( !channel.getIncomingUnreliableCommands().isEmpty() ) {
-                        listRemove = channel.getIncomingUnreliableCommands();
                         incomingCommand = channel.getIncomingUnreliableCommands().getFirst();
 
                         if ( incomingCommand.getUnreliableSequenceNumber() > 0 )
@@ -883,41 +1096,28 @@ public class Peer {
                                 else
                                         channel.setIncomingUnreliableSequenceNumber( incomingCommand
                                                         .getUnreliableSequenceNumber() );
-                }
-
-                if ( incomingCommand == null && !channel.getIncomingReliableCommands().isEmpty() ) {
-                        listRemove = channel.getIncomingReliableCommands();
-                        do {
-                                incomingCommand = channel.getIncomingReliableCommands().getFirst();
-                                if ( incomingCommand.getFragmentsRemaining() > 0
-                                                || incomingCommand.getReliableSequenceNumber() > channel
-                                                                .getIncomingReliableSequenceNumber() + 1 )
-                                        return null;
-
-                                if ( incomingCommand.getReliableSequenceNumber() <= channel
-                                                .getIncomingReliableSequenceNumber() ) {
-                                        channel.getIncomingReliableCommands().remove( incomingCommand );
-                                        incomingCommand = null;
-                                }
-                        } while ( incomingCommand == null && !channel.getIncomingReliableCommands().isEmpty() );
-
-                        if ( incomingCommand == null )
-                                return null;
-
-                        channel.setIncomingReliableSequenceNumber( incomingCommand.getReliableSequenceNumber() );
-
-                        if ( incomingCommand.getFragmentCount() > 0 )
-                                channel.setIncomingReliableSequenceNumber( incomingCommand.getReliableSequenceNumber()
-                                                + incomingCommand.getFragmentCount() - 1 );
 
+                        if ( incomingCommand != null ) {
+                                channel.getIncomingUnreliableCommands().removeFirst();
+                                packet = incomingCommand.getPacket();
+                                host.getCommandPool().recycle( incomingCommand );
+                                return packet;
+                        }
                 }
 
-                if ( incomingCommand == null )
+                incomingCommand = channel.getNextIncomingReliableCommand();
+                if ( incomingCommand == null || incomingCommand.getFragmentsRemaining() > 0 )
                         return null;
 
-                listRemove.remove( incomingCommand );
+                channel.removeIncomingReliableCommand( incomingCommand );
+                channel.setIncomingReliableSequenceNumber( incomingCommand.getReliableSequenceNumber() );
+
+                if ( incomingCommand.getFragmentCount() > 0 )
+                        channel.setIncomingReliableSequenceNumber( incomingCommand.getReliableSequenceNumber()
+                                        + incomingCommand.getFragmentCount() - 1 );
 
                 packet = incomingCommand.getPacket();
+                host.getCommandPool().recycle( incomingCommand );
                 return packet;
         }
 
@@ -927,28 +1127,29 @@ public class Peer {
          * @return
          */
         Command removeSentReliableCommand( int reliableSequenceNumber, byte channelID ) {
-                OutgoingCommand outgoingCommand = null;
+                Channel channel = getChannel( channelID );
+                OutgoingCommand outgoingCommand;
 
-                for ( OutgoingCommand currentCommand : sentReliableCommands )
-                        if ( currentCommand.getReliableSequenceNumber() == reliableSequenceNumber
-                                        && currentCommand.getCommand().getHeader().getChannelID() == channelID ) {
-                                outgoingCommand = currentCommand;
-                                break;
-                        }
+                if ( channel == null )
+                        return null;
 
+                outgoingCommand = channel.removeSentReliableCommand( reliableSequenceNumber );
                 if ( outgoingCommand == null )
                         return null;
 
                 Command commandNumber = outgoingCommand.getCommand();
                 sentReliableCommands.remove( outgoingCommand );
-                if ( outgoingCommand.getPacket() != null )
+                if ( outgoingCommand.getPacket() != null ) {
                         reliableDataInTransit -= outgoingCommand.getFragmentLength();
+                        outgoingCommand.getPacket().removeReference();
+                }
+                host.getCommandPool().recycle( outgoingCommand );
 
                 if ( sentReliableCommands.isEmpty() )
                         return commandNumber;
 
-                outgoingCommand = sentReliableCommands.element();
-                nextTimeout = outgoingCommand.getSentTime() + outgoingCommand.getRoundTripTimeout();
+                outgoingCommand = sentReliableCommands.getFirst();
+                nextTimeout = host.timerDeadline( outgoingCommand.getSentTime() + outgoingCommand.getRoundTripTimeout() );
 
                 return commandNumber;
         }
@@ -959,27 +1160,83 @@ public class Peer {
          * local host will time out.
          */
         public void reset() {
-                Object obj = host.getPeers().remove( getIncomingPeerID() );
+                boolean removed = host.removePeer( this );
+                resetQueues();
                 state = STATE.DISCONNECTED;
-                LOG.debug("removing from peers: "+obj);
+                LOG.debug("removing from peers: "+removed);
+        }
+
+        /**
+         * Clears a list of outgoing commands, dropping their references to the
+         * packets they send and handing them back to the host's pool.
+         * 
+         * @param commands
+         *            The list to clear.
+         */
+        void removeOutgoingCommands( OutgoingCommandList commands ) {
+                OutgoingCommand outgoingCommand;
+
+                while ( ( outgoingCommand = commands.getFirst() ) != null ) {
+                        commands.remove( outgoingCommand );
+                        if ( outgoingCommand.getPacket() != null )
+                                outgoingCommand.getPacket().removeReference();
+                        host.getCommandPool().recycle( outgoingCommand );
+                }
+        }
+
+        /**
+         * Forgets the unreliable commands sent in the last datagram.
+         */
+        void removeSentUnreliableCommands() {
+                removeOutgoingCommands( sentUnreliableCommands );
         }
 
         void resetQueues() {
-                acknowledgements.clear();
-                sentReliableCommands.clear();
-                sentUnreliableCommands.clear();
-                outgoingReliableCommands.clear();
-                outgoingUnreliableCommands.clear();
-                channels.clear();
+                acknowledgementCount = 0;
+                removeOutgoingCommands( sentReliableCommands );
+                removeOutgoingCommands( sentUnreliableCommands );
+                removeOutgoingCommands( outgoingReliableCommands );
+                removeOutgoingCommands( outgoingUnreliableCommands );
+
+                for ( Channel channel : channels ) {
+                        if ( channel == null )
+                                continue;
+                        channel.clearIncomingReliableCommands();
+                        for ( IncomingCommand incomingCommand : channel.getIncomingUnreliableCommands() ) {
+                                if ( incomingCommand.getPacket() != null )
+                                        incomingCommand.getPacket().release();
+                                host.getCommandPool().recycle( incomingCommand );
+                        }
+                }
+                Arrays.fill( channels, null );
+                Arrays.fill( incomingChannels, 0 );
+                systemChannel = null;
         }
 
+        /**
+         * Returns a channel of this peer, creating it when first used.
+         * 
+         * @param channelID
+         *            the channel ID, <code>0xFF</code> for the system channel.
+         * @return the channel, or <code>null</code> if the ID is beyond the
+         *         channel count of this peer.
+         */
         Channel selectChannel( byte channelID ) {
-                if ( channelID != (byte) 0xFF && channelID >= channelCount )
+                Channel result;
+
+                if ( channelID == (byte) 0xFF ) {
+                        if ( systemChannel == null )
+                                systemChannel = new Channel();
+                        return systemChannel;
+                }
+
+                int index = channelID & 0xFF;
+                if ( index >= channels.length )
                         return null;
-                Channel result = channels.get( channelID );
+                result = channels[index];
                 if ( result == null ) {
                         result = new Channel();
-                        channels.put( channelID, result );
+                        channels[index] = result;
                 }
 
                 return result;
@@ -998,15 +1255,14 @@ public class Peer {
         public void send( byte channelID, Packet packet ) throws IOException {
                 LOG.debug( host.getAddress() + ": sending packet to " + address + " on channel " + channelID );
                 Channel channel = selectChannel( channelID );
-
-                Header header = new Header();
-                Command command = new SendFragment();
+                CommandPool commandPool = host.getCommandPool();
+                Command command;
                 int fragmentLength;
 
                 if ( !isConnected() || channel == null )
                         throw new IOException();
 
-                fragmentLength = mtu - header.byteSize() - command.byteSize();
+                fragmentLength = mtu - Header.BYTE_SIZE - SendFragment.BYTE_SIZE;
                 if ( packet.getDataLength() > fragmentLength ) {
                         int fragmentCount = ( packet.getDataLength() + fragmentLength - 1 ) / fragmentLength;
                         int startSequenceNumber = channel.getOutgoingReliableSequenceNumber() + 1;
@@ -1016,7 +1272,7 @@ public class Peer {
                         packet.setFlags( Packet.FLAG_RELIABLE );
 
                         for ( fragmentNumber = 0, fragmentOffset = 0; fragmentOffset < packet.getDataLength(); ++fragmentNumber, fragmentOffset += fragmentLength ) {
-                                SendFragment sf = new SendFragment();
+                                SendFragment sf = (SendFragment) commandPool.acquireCommand( Command.SEND_FRAGMENT );
                                 command = sf;
                                 sf.getHeader().setChannelID( channelID );
                                 sf.getHeader().setFlags( Header.FLAG_ACKNOWLEDGE );
@@ -1035,17 +1291,17 @@ public class Peer {
                 }
 
                 if ( ( packet.getFlags() & Packet.FLAG_RELIABLE ) != 0 ) {
-                        command = new SendReliable();
+                        command = commandPool.acquireCommand( Command.SEND_RELIABLE );
                         command.getHeader().setChannelID( channelID ); 
                         command.getHeader().setFlags( Header.FLAG_ACKNOWLEDGE );
                 } else if ( ( packet.getFlags() & Packet.FLAG_UNSEQUENCED ) != 0 ) {
-                        SendUnsequenced su = new SendUnsequenced();
+                        SendUnsequenced su = (SendUnsequenced) commandPool.acquireCommand( Command.SEND_UNSEQUENCED );
                         command = su;
                         su.getHeader().setChannelID( channelID ); 
                         su.getHeader().setFlags( Header.FLAG_UNSEQUENCED );
                         su.setUnsequencedGroup( outgoingUnsequencedGroup + 1 );
                 } else {
-                        SendUnreliable su = new SendUnreliable();
+                        SendUnreliable su = (SendUnreliable) commandPool.acquireCommand( Command.SEND_UNRELIABLE );
                         command = su;
                         su.getHeader().setChannelID( channelID ); 
                         su.getHeader().setFlags( (byte) 0 );
@@ -1055,36 +1311,95 @@ public class Peer {
                 queueOutgoingCommand( command, packet, 0, (short) packet.getDataLength() );
         }
 
+        /**
+         * Buffers as many of the pending acknowledgements as fit in the datagram
+         * being built. The others are sent in the next one.
+         * <p>
+         * The remote host measures its round trip time from the sent time each
+         * acknowledgement echoes, so when acknowledgements may be held the time
+         * one was held here is added to it, in the unit the remote host stamps
+         * its datagrams in.
+         */
         void sendAcknowledgements() {
-                for ( Acknowledgement acknowledgement : acknowledgements ) {
-                        Acknowledge command = new Acknowledge();
-
-                        if ( !fitsInPacket( command ) )
-                                break;
+                int capacity = acknowledgements.length / ACKNOWLEDGEMENT_SIZE;
+                boolean selective = config.selectiveAcknowledgements
+                                && ( capabilities & CommandHeader.CAPABILITY_SELECTIVE_ACKNOWLEDGEMENT ) != 0;
+                boolean highResolution = ( capabilities & CommandHeader.CAPABILITY_HIGH_RESOLUTION_TIMING ) != 0;
+
+                while ( acknowledgementCount > 0 && fitsInPacket( Acknowledge.BYTE_SIZE ) ) {
+                        int index = firstAcknowledgement * ACKNOWLEDGEMENT_SIZE;
+                        int reliableSequenceNumber = acknowledgements[index + 1];
+                        int flags = acknowledgements[index + 3];
+                        int mask = 0;
+                        int count = 1;
+
+                        /*
+                         * The acknowledgements of the commands of a datagram follow each
+                         * other in the ring. Those on the same channel within the mask's
+                         * reach of the first are folded into one selective acknowledgement.
+                         */
+                        if ( selective && fitsInPacket( SelectiveAcknowledge.BYTE_SIZE ) )
+                                for ( ; count < acknowledgementCount; count++ ) {
+                                        int next = ( ( firstAcknowledgement + count ) & ( capacity - 1 ) ) * ACKNOWLEDGEMENT_SIZE;
+                                        int distance = acknowledgements[next + 1] - reliableSequenceNumber - 1;
+
+                                        if ( acknowledgements[next] != acknowledgements[index]
+                                                        || acknowledgements[next + 2] != acknowledgements[index + 2] || distance < -1
+                                                        || distance >= SelectiveAcknowledge.MASK_SIZE )
+                                                break;
+                                        if ( distance >= 0 )
+                                                mask |= 1 << distance;
+                                        flags |= acknowledgements[next + 3];
+                                }
 
-                        command.getHeader().setChannelID( acknowledgement.getCommand().getHeader().getChannelID() );
-                        command.getHeader().setFlags( (byte) 0 );
+                        int sentTime = acknowledgements[index + 2];
+                        if ( config.acknowledgementDelay > 0 ) {
+                                int heldTime = Math.max( 0, host.getTimeCurrentMicros() - acknowledgements[index + 4] );
+                                sentTime += highResolution ? heldTime : heldTime / 1000;
+                        }
 
-                        command.setReceivedReliableSequenceNumber( acknowledgement.getCommand().getHeader()
-                                        .getReliableSequenceNumber() );
-                        command.setReceivedSentTime( acknowledgement.getSentTime() );
+                        host.countCommand();
+                        if ( mask == 0 )
+                                host.bufferAcknowledgement( (byte) acknowledgements[index], reliableSequenceNumber, sentTime );
+                        else
+                                host.bufferSelectiveAcknowledgement( (byte) acknowledgements[index], reliableSequenceNumber,
+                                                mask, sentTime );
+                        firstAcknowledgement = ( firstAcknowledgement + count ) & ( capacity - 1 );
+                        acknowledgementCount -= count;
 
-                        host.getCommands().add( command );
+                        if ( ( flags & ACKNOWLEDGEMENT_DISCONNECT ) != 0 )
+                                setState( STATE.ZOMBIE );
+                }
+        }
 
-                        host.buffer( command );
+        /**
+         * Adds a reliable command which has just been sent to the sent commands.
+         * They are kept in order of retransmission deadline, so that the first is
+         * always the next to time out. New commands almost always go last, as
+         * only a retransmission's doubled timeout can bring an earlier deadline
+         * later.
+         * 
+         * @param outgoingCommand
+         *            The command sent.
+         */
+        private void addSentReliableCommand( OutgoingCommand outgoingCommand ) {
+                int deadline = outgoingCommand.getSentTime() + outgoingCommand.getRoundTripTimeout();
+                OutgoingCommand previous = sentReliableCommands.getLast();
 
-                        if ( acknowledgement.getCommand() instanceof Disconnect )
-                                state = STATE.ZOMBIE;
+                while ( previous != null && deadline - ( previous.getSentTime() + previous.getRoundTripTimeout() ) < 0 )
+                        previous = previous.previous;
+                sentReliableCommands.addAfter( previous, outgoingCommand );
+                selectChannel( outgoingCommand.getCommand().getHeader().getChannelID() ).addSentReliableCommand(
+                                outgoingCommand );
 
-                }
-                acknowledgements.clear();
+                outgoingCommand = sentReliableCommands.getFirst();
+                nextTimeout = host.timerDeadline( outgoingCommand.getSentTime() + outgoingCommand.getRoundTripTimeout() );
         }
 
         void sendReliableOutgoingCommands() {
-                for ( Iterator<OutgoingCommand> currentCommand = outgoingReliableCommands.iterator(); currentCommand
-                                .hasNext(); ) {
-                        OutgoingCommand outgoingCommand = currentCommand.next();
+                OutgoingCommand outgoingCommand;
 
+                while ( ( outgoingCommand = outgoingReliableCommands.getFirst() ) != null ) {
                         if ( !fitsInPacket( outgoingCommand ) )
                                 break;
 
@@ -1093,16 +1408,18 @@ public class Peer {
                                 break;
 
                         if ( outgoingCommand.getRoundTripTimeout() == 0 ) {
-                                outgoingCommand.setRoundTripTimeout( roundTripTime + 4 * roundTripTimeVariance );
+                                /*
+                                 * Timeouts are kept in microseconds like the round trip time, and
+                                 * are at least one, as a timeout of 0 would expire the command at
+                                 * once.
+                                 */
+                                outgoingCommand.setRoundTripTimeout( Math.max( 1, roundTripTime + 4 * roundTripTimeVariance ) );
                                 outgoingCommand.setRoundTripTimeoutLimit( outgoingCommand.getRoundTripTimeout()
-                                                * configuration.getInt( "ENET_PEER_TIMEOUT_LIMIT" ) );
+                                                * config.timeoutLimit );
                         }
 
-                        if ( sentReliableCommands.isEmpty() )
-                                nextTimeout = host.getTimeCurrent() + outgoingCommand.getRoundTripTimeout();
-
-                        outgoingCommand.sentTime = host.getTimeCurrent();
-                        host.getCommands().add( outgoingCommand.getCommand() );
+                        outgoingCommand.sentTime = host.getTimeCurrentMicros();
+                        host.countCommand();
 
                         if ( outgoingCommand.getPacket() != null ) {
                                 int length = outgoingCommand.getCommand().getHeader().getCommandLength();
@@ -1113,9 +1430,9 @@ public class Peer {
                         }
 
                         host.buffer( outgoingCommand );
-                        currentCommand.remove();
+                        outgoingReliableCommands.remove( outgoingCommand );
 
-                        sentReliableCommands.add( outgoingCommand );
+                        addSentReliableCommand( outgoingCommand );
 
                         packetsSent++;
                 }
@@ -1123,29 +1440,32 @@ public class Peer {
 
         void sendUnreliableOutgoingCommands() {
                 // TODO: Verify Unreliable sending
-                for ( Iterator<OutgoingCommand> currentCommand = outgoingUnreliableCommands.iterator(); currentCommand
-                                .hasNext(); ) {
-                        OutgoingCommand outgoingCommand = currentCommand.next();
+                OutgoingCommand outgoingCommand;
 
+                while ( ( outgoingCommand = outgoingUnreliableCommands.getFirst() ) != null ) {
                         if ( !fitsInPacket( outgoingCommand ) )
                                 break;
 
                         if ( outgoingCommand.getPacket() != null ) {
-                                packetThrottleCounter += configuration.getInt( "ENET_PEER_PACKET_THROTTLE_COUNTER" );
-                                packetThrottleCounter %= configuration.getInt( "ENET_PEER_PACKET_THROTTLE_SCALE" );
+                                packetThrottleCounter += config.packetThrottleCounter;
+                                packetThrottleCounter %= config.packetThrottleScale;
 
                                 if ( packetThrottleCounter > packetThrottle ) {
-                                        currentCommand.remove();
+                                        outgoingUnreliableCommands.remove( outgoingCommand );
+                                        outgoingCommand.getPacket().removeReference();
+                                        host.getCommandPool().recycle( outgoingCommand );
                                         continue;
                                 }
                         }
 
                         host.buffer( outgoingCommand );
-                        currentCommand.remove();
-                        host.getCommands().add( outgoingCommand.getCommand() );
+                        outgoingUnreliableCommands.remove( outgoingCommand );
+                        host.countCommand();
 
                         if ( outgoingCommand.getPacket() != null )
                                 sentUnreliableCommands.add( outgoingCommand );
+                        else
+                                host.getCommandPool().recycle( outgoingCommand );
                 }
         }
 
@@ -1165,16 +1485,20 @@ public class Peer {
                 this.challenge = challenge;
         }
 
-        void setChannelCount( int channelCount ) {
-                this.channelCount = channelCount;
-        }
-
         /**
-         * @param channels
-         *            The channels to set.
+         * @param capabilities
+         *            The capabilities to set.
          */
-        void setChannels( Map<Byte, Channel> channels ) {
-                this.channels = channels;
+        void setCapabilities( byte capabilities ) {
+                this.capabilities = capabilities;
+        }
+
+        void setChannelCount( int channelCount ) {
+                this.channelCount = channelCount;
+                if ( channels == null || channels.length != channelCount ) {
+                        channels = new Channel[channelCount];
+                        incomingChannels = new long[( channelCount + 63 ) >> 6];
+                }
         }
 
         /**
@@ -1328,6 +1652,10 @@ public class Peer {
         void setState( STATE state ) {
                 LOG.debug( host.getAddress() + ": peer " + address + " changed state to " + state );
                 this.state = state;
+                if ( state == STATE.ZOMBIE || state == STATE.CONNECTED )
+                        host.queueDispatch( this );
+                if ( state == STATE.CONNECTED )
+                        host.scheduleBandwidthThrottle();
         }
 
         /**
@@ -1348,7 +1676,7 @@ public class Peer {
                         packetThrottle += packetThrottleAcceleration;
                         if ( packetThrottle > packetThrottleLimit )
                                 packetThrottle = packetThrottleLimit;
-                } else if ( rtt > lastRoundTripTime * 2 * lastRoundTripTimeVariance )
+                } else if ( rtt > lastRoundTripTime + 2 * lastRoundTripTimeVariance )
                         if ( packetThrottle > packetThrottleDeceleration )
                                 packetThrottle -= packetThrottleDeceleration;
                         else
@@ -1389,7 +1717,7 @@ public class Peer {
         }
 
         void updatePacketLossVariance( int currentTime ) {
-                int lossDifference = packetsLost * configuration.getInt( "ENET_PEER_PACKET_LOSS_SCALE" )
+                int lossDifference = packetsLost * config.packetLossScale
                                 / packetsSent - packetLoss;
                 packetLossVariance -= packetLossVariance / 4;
 
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2005 Dizan Vasquez
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.jenet;
+
+import java.net.InetSocketAddress;
+
+/**
+ * The address and challenge which identify a connection, used as the key of
+ * the host's peer index.
+ */
+class PeerAddress {
+
+        protected InetSocketAddress address;
+
+        protected int challenge;
+
+        PeerAddress() {
+                super();
+        }
+
+        PeerAddress( InetSocketAddress address, int challenge ) {
+                super();
+                this.address = address;
+                this.challenge = challenge;
+        }
+
+        @Override
+        public boolean equals( Object obj ) {
+                if ( !( obj instanceof PeerAddress ) )
+                        return false;
+                PeerAddress other = (PeerAddress) obj;
+                return challenge == other.challenge && address.equals( other.address );
+        }
+
+        /**
+         * @return Returns the address.
+         */
+        public InetSocketAddress getAddress() {
+                return address;
+        }
+
+        /**
+         * @return Returns the challenge.
+         */
+        public int getChallenge() {
+                return challenge;
+        }
+
+        @Override
+        public int hashCode() {
+                return address.hashCode() * 31 + challenge;
+        }
+
+        /**
+         * Points this key at another connection, so that a single key can be
+         * reused for lookups.
+         * 
+         * @param address
+         *            The address to set.
+         * @param challenge
+         *            The challenge to set.
+         */
+        void set( InetSocketAddress address, int challenge ) {
+                this.address = address;
+                this.challenge = challenge;
+        }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2005 Dizan Vasquez
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.jenet;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The peers of a host, indexed by their incoming peer ID. Peers are kept in
+ * an array sized to the maximum number of connections and free IDs in a
+ * stack, so looking a peer up, adding and removing it take constant time.
+ * <p>
+ * As a <code>Map</code> the table is read-only; peers are added and removed
+ * by the host through {@link #add add} and {@link #remove(Peer) remove}.
+ * Iterating it visits the peers in ID order and tolerates peers being removed
+ * meanwhile.
+ */
+class PeerTable extends AbstractMap<Short, Peer> {
+
+        /**
+         * Visits the used slots of the table.
+         */
+        private abstract class Cursor<T> implements Iterator<T> {
+
+                protected int next;
+
+                public boolean hasNext() {
+                        next = seek( next );
+                        return next < peers.length;
+                }
+
+                protected int advance() {
+                        if ( !hasNext() )
+                                throw new NoSuchElementException();
+                        return next++;
+                }
+
+                private int seek( int from ) {
+                        while ( from < peers.length && peers[from] == null )
+                                from++;
+                        return from;
+                }
+
+                public void remove() {
+                        throw new UnsupportedOperationException();
+                }
+        }
+
+        protected Set<Entry<Short, Peer>> entries = new AbstractSet<Entry<Short, Peer>>() {
+
+                @Override
+                public Iterator<Entry<Short, Peer>> iterator() {
+                        return new Cursor<Entry<Short, Peer>>() {
+
+                                public Entry<Short, Peer> next() {
+                                        int peerID = advance();
+                                        return new SimpleImmutableEntry<Short, Peer>( (short) peerID, peers[peerID] );
+                                }
+                        };
+                }
+
+                @Override
+                public int size() {
+                        return size;
+                }
+        };
+
+        protected short[] freePeerIDs;
+
+        protected int freePeerIDCount;
+
+        protected Peer[] peers;
+
+        protected int size;
+
+        protected Collection<Peer> values = new AbstractCollection<Peer>() {
+
+                @Override
+                public Iterator<Peer> iterator() {
+                        return new Cursor<Peer>() {
+
+                                public Peer next() {
+                                        return peers[advance()];
+                                }
+                        };
+                }
+
+                @Override
+                public int size() {
+                        return size;
+                }
+        };
+
+        /**
+         * Creates an empty table.
+         * 
+         * @param capacity
+         *            The maximum number of peers.
+         */
+        PeerTable( int capacity ) {
+                super();
+                peers = new Peer[capacity];
+                freePeerIDs = new short[capacity];
+                for ( int i = 0; i < capacity; i++ )
+                        freePeerIDs[i] = (short) ( capacity - 1 - i );
+                freePeerIDCount = capacity;
+        }
+
+        /**
+         * Adds a peer under the lowest recently freed ID.
+         * 
+         * @param peer
+         *            The peer to add.
+         * @return The ID of the peer, or -1 if the table is full.
+         */
+        short add( Peer peer ) {
+                if ( freePeerIDCount == 0 )
+                        return -1;
+                short peerID = freePeerIDs[--freePeerIDCount];
+                peers[peerID] = peer;
+                size++;
+                return peerID;
+        }
+
+        /**
+         * @return Returns the maximum number of peers.
+         */
+        int capacity() {
+                return peers.length;
+        }
+
+        @Override
+        public boolean containsKey( Object key ) {
+                return get( key ) != null;
+        }
+
+        @Override
+        public Set<Entry<Short, Peer>> entrySet() {
+                return entries;
+        }
+
+        /**
+         * Looks a peer up by its ID without boxing it.
+         * 
+         * @param peerID
+         *            The incoming ID of the peer.
+         * @return The peer, or null if there is none with that ID.
+         */
+        Peer get( int peerID ) {
+                if ( peerID < 0 || peerID >= peers.length )
+                        return null;
+                return peers[peerID];
+        }
+
+        @Override
+        public Peer get( Object key ) {
+                if ( !( key instanceof Short ) )
+                        return null;
+                return get( ( (Short) key ).intValue() );
+        }
+
+        /**
+         * Removes a peer, freeing its ID.
+         * 
+         * @param peer
+         *            The peer to remove.
+         * @return Whether the peer was in the table.
+         */
+        boolean remove( Peer peer ) {
+                short peerID = peer.getIncomingPeerID();
+                if ( get( peerID ) != peer )
+                        return false;
+                peers[peerID] = null;
+                freePeerIDs[freePeerIDCount++] = peerID;
+                size--;
+                return true;
+        }
+
+        @Override
+        public int size() {
+                return size;
+        }
+
+        @Override
+        public Collection<Peer> values() {
+                return values;
+        }
+}
@@ -26,6 +26,16 @@ package net.jenet;
  */
 class Ping extends Command {
 
+        static final ICommandFactory FACTORY = new ICommandFactory() {
+                public Command create() {
+                        return new Ping();
+                }
+        };
+
+        public Ping() {
+                super( PING );
+        }
+
         /*
          * (non-Javadoc)
          * 
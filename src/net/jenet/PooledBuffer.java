@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2005 Dizan Vasquez
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.jenet;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A reference counted buffer owned by a {@link BufferPool}.
+ */
+class PooledBuffer {
+
+        protected ByteBuffer data;
+
+        protected BufferPool pool;
+
+        protected int referenceCount;
+
+        PooledBuffer( BufferPool pool, ByteBuffer data ) {
+                super();
+                this.pool = pool;
+                this.data = data;
+        }
+
+        /**
+         * @return Returns the data.
+         */
+        ByteBuffer getData() {
+                return data;
+        }
+
+        /**
+         * @return Returns the referenceCount.
+         */
+        int getReferenceCount() {
+                return referenceCount;
+        }
+
+        /**
+         * Drops a reference to this buffer, giving it back to its pool when no
+         * references are left.
+         */
+        void release() {
+                if ( referenceCount > 0 && --referenceCount == 0 )
+                        pool.recycle( this );
+        }
+
+        /**
+         * Adds a reference to this buffer.
+         */
+        void retain() {
+                referenceCount++;
+        }
+
+        /**
+         * @param referenceCount
+         *            The referenceCount to set.
+         */
+        void setReferenceCount( int referenceCount ) {
+                this.referenceCount = referenceCount;
+        }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2005 Dizan Vasquez
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.jenet;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Acknowledges several reliable commands of one channel which arrived in the
+ * same datagram. Besides the command acknowledged by {@link Acknowledge}, bit
+ * <code>i</code> of the mask acknowledges the command
+ * <code>i + 1</code> sequence numbers after it, so one command covers up to
+ * 33. Only sent to peers which announced
+ * {@link CommandHeader#CAPABILITY_SELECTIVE_ACKNOWLEDGEMENT}.
+ */
+class SelectiveAcknowledge extends Acknowledge {
+
+        static final ICommandFactory FACTORY = new ICommandFactory() {
+                public Command create() {
+                        return new SelectiveAcknowledge();
+                }
+        };
+
+        public static final int BYTE_SIZE = Acknowledge.BYTE_SIZE + 4;
+
+        /**
+         * The number of commands the mask covers.
+         */
+        public static final int MASK_SIZE = 32;
+
+        protected int receivedMask;
+
+        public SelectiveAcknowledge() {
+                super( SELECTIVE_ACKNOWLEDGE );
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see net.jenet.Command#toBuffer(java.nio.ByteBuffer)
+         */
+        @Override
+        public void toBuffer( ByteBuffer buffer ) {
+                super.toBuffer( buffer );
+                buffer.putInt( receivedMask );
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see net.jenet.Command#fromBuffer(java.nio.ByteBuffer)
+         */
+        @Override
+        public void fromBuffer( ByteBuffer buffer ) {
+                super.fromBuffer( buffer );
+                receivedMask = buffer.getInt();
+        }
+
+        /**
+         * Encodes a selective acknowledgement without building the command.
+         * 
+         * @param buffer
+         *            The buffer to write to.
+         * @param channelID
+         *            The channel of the commands acknowledged.
+         * @param receivedReliableSequenceNumber
+         *            The sequence number of the first command acknowledged.
+         * @param receivedMask
+         *            The commands acknowledged after the first.
+         * @param receivedSentTime
+         *            The time at which the commands acknowledged were sent.
+         */
+        static void toBuffer( ByteBuffer buffer, byte channelID, int receivedReliableSequenceNumber,
+                        int receivedMask, int receivedSentTime ) {
+                buffer.put( Command.SELECTIVE_ACKNOWLEDGE );
+                buffer.put( channelID );
+                buffer.put( (byte) 0 );
+                buffer.put( (byte) 0 );
+                buffer.putInt( BYTE_SIZE );
+                buffer.putInt( 0 );
+                buffer.putInt( receivedReliableSequenceNumber );
+                buffer.putInt( receivedSentTime );
+                buffer.putInt( receivedMask );
+        }
+
+        /**
+         * @return Returns the receivedMask.
+         */
+        public int getReceivedMask() {
+                return receivedMask;
+        }
+
+        /**
+         * @param receivedMask
+         *            The receivedMask to set.
+         */
+        public void setReceivedMask( int receivedMask ) {
+                this.receivedMask = receivedMask;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see net.jenet.Command#byteSize()
+         */
+        @Override
+        public int byteSize() {
+                return BYTE_SIZE;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see net.jenet.Acknowledge#execute(net.jenet.Host, net.jenet.Peer,
+         *      net.jenet.Header)
+         */
+        @Override
+        public Event execute( Host host, Peer peer, Header header ) {
+                Event result = new Event();
+
+                /*
+                 * The commands share a datagram, so they give a single round trip time.
+                 */
+                if ( !sampleRoundTripTime( host, peer ) )
+                        return result;
+
+                result = acknowledge( host, peer, receivedReliableSequenceNumber, result );
+                for ( int mask = receivedMask; mask != 0; mask &= mask - 1 )
+                        result = acknowledge( host, peer, receivedReliableSequenceNumber + 1
+                                        + Integer.numberOfTrailingZeros( mask ), result );
+                return result;
+        }
+}
@@ -27,6 +27,12 @@ import java.nio.ByteBuffer;
  * @author Dizan Vasquez
  */
 class SendFragment extends Command {
+
+        static final ICommandFactory FACTORY = new ICommandFactory() {
+                public Command create() {
+                        return new SendFragment();
+                }
+        };
         
         public static final int BYTE_SIZE = Command.BYTE_SIZE + 20;
 
@@ -40,6 +46,10 @@ class SendFragment extends Command {
 
         protected int totalLength;
 
+        public SendFragment() {
+                super( SEND_FRAGMENT );
+        }
+
         /*
          * (non-Javadoc)
          * 
@@ -62,17 +72,17 @@ class SendFragment extends Command {
                 if ( startSequenceNumber <= channel.getIncomingReliableSequenceNumber() )
                         return result;
 
-                IncomingCommand startCommand = null;
+                IncomingCommand startCommand = channel.getIncomingReliableCommand( startSequenceNumber );
 
-                for ( IncomingCommand command : channel.getIncomingReliableCommands() )
-                        if ( command.getCommand() instanceof SendFragment
-                                        && ( (SendFragment) command.getCommand() ).getStartSequenceNumber() == startSequenceNumber ) {
-                                startCommand = command;
-                                break;
-                        }
+                /*
+                 * Only the start of a fragmented packet is queued with its command.
+                 */
+                if ( startCommand != null && startCommand.getCommand() == null )
+                        return result;
 
                 if ( startCommand == null ) {
                         SendFragment hostCommand = new SendFragment();
+                        hostCommand.header.channelID = getHeader().getChannelID();
                         hostCommand.header.reliableSequenceNumber = startSequenceNumber;
                         hostCommand.startSequenceNumber = startSequenceNumber;
                         hostCommand.fragmentNumber = fragmentNumber;
@@ -80,8 +90,10 @@ class SendFragment extends Command {
                         hostCommand.fragmentOffset = fragmentOffset;
                         hostCommand.totalLength = totalLength;
 
-                        startCommand = peer.queueIncomingCommand( hostCommand, new Packet( totalLength, Packet.FLAG_RELIABLE ),
-                                        fragmentCount );
+                        startCommand = peer.queueIncomingCommand( hostCommand, host.getPacketPool().acquire( totalLength,
+                                        Packet.FLAG_RELIABLE ), fragmentCount );
+                        if ( startCommand == null )
+                                return result;
                         
                 } else if ( totalLength != startCommand.getPacket().getDataLength()
                                 || fragmentCount != startCommand.getFragmentCount() )
@@ -96,6 +108,9 @@ class SendFragment extends Command {
                                 fragmentLength = startCommand.getPacket().getDataLength() - fragmentOffset;
 
                         startCommand.getPacket().fromBuffer( host.getReceivedData(), fragmentOffset, fragmentLength );
+
+                        if ( startCommand.getFragmentsRemaining() == 0 )
+                                host.queueDispatch( peer );
                 }
 
                 return result;
@@ -26,6 +26,16 @@ package net.jenet;
  */
 class SendReliable extends Command {
 
+        static final ICommandFactory FACTORY = new ICommandFactory() {
+                public Command create() {
+                        return new SendReliable();
+                }
+        };
+
+        public SendReliable() {
+                super( SEND_RELIABLE );
+        }
+
         /*
          * (non-Javadoc)
          * 
@@ -42,8 +52,7 @@ class SendReliable extends Command {
                 if ( channel == null || !peer.isConnected() )
                         return result;
 
-                packet = new Packet( getHeader().getCommandLength() - byteSize(), Packet.FLAG_RELIABLE );
-                packet.fromBuffer( host.getReceivedData() );
+                packet = host.createIncomingPacket( getHeader().getCommandLength() - byteSize(), Packet.FLAG_RELIABLE );
                 peer.queueIncomingCommand( this, packet, 0 );
                 return result;
         }
@@ -28,8 +28,18 @@ import java.nio.ByteBuffer;
  */
 class SendUnreliable extends Command {
 
+        static final ICommandFactory FACTORY = new ICommandFactory() {
+                public Command create() {
+                        return new SendUnreliable();
+                }
+        };
+
         protected int unreliableSequenceNumber;
 
+        public SendUnreliable() {
+                super( SEND_UNRELIABLE );
+        }
+
         /*
          * (non-Javadoc)
          * 
@@ -44,9 +54,7 @@ class SendUnreliable extends Command {
                 if ( channel == null || !peer.isConnected() )
                         return result;
 
-                packet = new Packet( getHeader().getCommandLength() - byteSize(), 0 );
-
-                packet.fromBuffer( host.getReceivedData() );
+                packet = host.createIncomingPacket( getHeader().getCommandLength() - byteSize(), 0 );
 
                 peer.queueIncomingCommand( this, packet, 0 );
                 return result;
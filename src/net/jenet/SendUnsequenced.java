@@ -29,8 +29,18 @@ import java.util.Arrays;
  */
 class SendUnsequenced extends Command {
 
+        static final ICommandFactory FACTORY = new ICommandFactory() {
+                public Command create() {
+                        return new SendUnsequenced();
+                }
+        };
+
         protected int unsequencedGroup;
 
+        public SendUnsequenced() {
+                super( SEND_UNSEQUENCED );
+        }
+
         /*
          * (non-Javadoc)
          * 
@@ -47,7 +57,7 @@ class SendUnsequenced extends Command {
                 if ( channel == null || !peer.isConnected() )
                         return result;
 
-                int windowSize = peer.getConfiguration().getInt( "ENET_PEER_UNSEQUENCED_WINDOW_SIZE" );
+                int windowSize = peer.getConfig().unsequencedWindowSize;
                 index = unsequencedGroup % windowSize;
                 if ( unsequencedGroup >= peer.getIncomingUnsequencedGroup() + windowSize ) {
                         peer.setIncomingUnsequencedGroup( unsequencedGroup - index );
@@ -58,8 +68,7 @@ class SendUnsequenced extends Command {
 
                 peer.getUnsequencedWindow()[index / 32] |= 1 << ( index % 32 );
 
-                packet = new Packet( getHeader().getCommandLength() - this.byteSize(), Packet.FLAG_UNSEQUENCED );
-                packet.fromBuffer( host.getReceivedData() );
+                packet = host.createIncomingPacket( getHeader().getCommandLength() - byteSize(), Packet.FLAG_UNSEQUENCED );
 
                 peer.queueIncomingCommand( this, packet, 0 );
 
@@ -28,12 +28,22 @@ import java.nio.ByteBuffer;
  */
 class ThrottleConfigure extends Command {
 
+        static final ICommandFactory FACTORY = new ICommandFactory() {
+                public Command create() {
+                        return new ThrottleConfigure();
+                }
+        };
+
         int packetThrottleInterval;
 
         int packetThrottleAcceleration;
 
         int packetThrottleDeceleration;
 
+        public ThrottleConfigure() {
+                super( THROTTLE_CONFIGURE );
+        }
+
         /*
          * (non-Javadoc)
          * 
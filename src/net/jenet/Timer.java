@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2005 Dizan Vasquez
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.jenet;
+
+/**
+ * A deadline kept in a {@link TimerWheel}. A peer's timer stands for its
+ * earliest retransmission or ping; a timer without a peer stands for a host
+ * wide deadline.
+ */
+class Timer {
+
+        protected int deadline;
+
+        protected Timer next;
+
+        protected Peer peer;
+
+        protected Timer previous;
+
+        protected boolean scheduled;
+
+        Timer( Peer peer ) {
+                super();
+                this.peer = peer;
+        }
+
+        /**
+         * @return Returns the deadline.
+         */
+        int getDeadline() {
+                return deadline;
+        }
+
+        /**
+         * @return The peer to service when this timer is due, or null.
+         */
+        Peer getPeer() {
+                return peer;
+        }
+
+        /**
+         * @return Whether this timer is in a wheel.
+         */
+        boolean isScheduled() {
+                return scheduled;
+        }
+}
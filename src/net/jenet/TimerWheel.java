@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2005 Dizan Vasquez
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.jenet;
+
+/**
+ * A hashed timing wheel. Timers are hashed by their deadline into one slot
+ * per millisecond of a revolution; timers further away than a revolution
+ * share a slot with nearer ones and are skipped until their turn comes.
+ * Scheduling and cancelling take constant time, and expiring only visits the
+ * slots of the milliseconds elapsed since the last call.
+ */
+class TimerWheel {
+
+        /**
+         * The number of slots, a power of two. Each slot spans a millisecond.
+         */
+        static final int SLOTS = 1024;
+
+        protected Timer[] slots = new Timer[SLOTS];
+
+        protected int size;
+
+        protected int time;
+
+        /**
+         * Creates an empty wheel.
+         * 
+         * @param time
+         *            The current time.
+         */
+        TimerWheel( int time ) {
+                super();
+                this.time = time;
+        }
+
+        /**
+         * Removes a timer from the wheel, if it is in it.
+         * 
+         * @param timer
+         *            The timer to cancel.
+         */
+        void cancel( Timer timer ) {
+                if ( !timer.scheduled )
+                        return;
+                if ( timer.previous == null )
+                        slots[timer.deadline & ( SLOTS - 1 )] = timer.next;
+                else
+                        timer.previous.next = timer.next;
+                if ( timer.next != null )
+                        timer.next.previous = timer.previous;
+                timer.previous = null;
+                timer.next = null;
+                timer.scheduled = false;
+                size--;
+        }
+
+        /**
+         * Removes the timers due at a given time.
+         * 
+         * @param timeCurrent
+         *            The current time.
+         * @return The first of the due timers, which are chained through their
+         *         <code>next</code> field, or null if none is due.
+         */
+        Timer expire( int timeCurrent ) {
+                Timer expired = null;
+                int elapsed = Time.difference( timeCurrent, time );
+
+                if ( elapsed < 0 )
+                        return null;
+                if ( elapsed >= SLOTS )
+                        elapsed = SLOTS - 1;
+
+                for ( int tick = timeCurrent - elapsed; size > 0 && tick - timeCurrent <= 0; tick++ ) {
+                        Timer timer = slots[tick & ( SLOTS - 1 )];
+                        while ( timer != null ) {
+                                Timer next = timer.next;
+                                if ( Time.lessEqual( timer.deadline, timeCurrent ) ) {
+                                        cancel( timer );
+                                        timer.next = expired;
+                                        expired = timer;
+                                }
+                                timer = next;
+                        }
+                }
+                time = timeCurrent;
+                return expired;
+        }
+
+        /**
+         * Finds when the next timer is due. Timers which are already due are
+         * found at the time of the last expiry.
+         * 
+         * @param limit
+         *            The latest time of interest.
+         * @return The deadline of the next timer, or a time no later than
+         *         <code>limit</code> if none is due before it.
+         */
+        int nextDeadline( int limit ) {
+                int span = Time.difference( limit, time );
+
+                if ( size == 0 || span <= 0 )
+                        return limit;
+                if ( span > SLOTS )
+                        span = SLOTS;
+
+                for ( int tick = time; tick - time < span; tick++ )
+                        for ( Timer timer = slots[tick & ( SLOTS - 1 )]; timer != null; timer = timer.next )
+                                if ( Time.lessEqual( timer.deadline, tick ) )
+                                        return tick;
+                return time + span;
+        }
+
+        /**
+         * Puts a timer in the wheel, moving it if it is already in it. A
+         * deadline which has passed is due on the next expiry.
+         * 
+         * @param timer
+         *            The timer.
+         * @param deadline
+         *            The time at which the timer is due.
+         */
+        void schedule( Timer timer, int deadline ) {
+                int slot;
+
+                cancel( timer );
+                if ( Time.less( deadline, time ) )
+                        deadline = time;
+                timer.deadline = deadline;
+                slot = deadline & ( SLOTS - 1 );
+                timer.previous = null;
+                timer.next = slots[slot];
+                if ( timer.next != null )
+                        timer.next.previous = timer;
+                slots[slot] = timer;
+                timer.scheduled = true;
+                size++;
+        }
+
+        int size() {
+                return size;
+        }
+}
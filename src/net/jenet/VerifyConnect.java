@@ -23,13 +23,18 @@ package net.jenet;
 
 import java.nio.ByteBuffer;
 
-import org.apache.commons.configuration.PropertiesConfiguration;
 
 /**
  * @author Dizan Vasquez
  */
 class VerifyConnect extends Command {
 
+        static final ICommandFactory FACTORY = new ICommandFactory() {
+                public Command create() {
+                        return new VerifyConnect();
+                }
+        };
+
         protected int channelCount;
 
         protected int incomingBandwidth;
@@ -48,6 +53,10 @@ class VerifyConnect extends Command {
 
         protected int windowSize;
 
+        public VerifyConnect() {
+                super( VERIFY_CONNECT );
+        }
+
         /*
          * (non-Javadoc)
          * 
@@ -56,7 +65,7 @@ class VerifyConnect extends Command {
         @Override
         public Event execute( Host host, Peer peer, Header header ) {
                 Event result = new Event();
-                PropertiesConfiguration configuration = host.getConfiguration();
+                HostConfig config = host.getConfig();
                 if ( !peer.isConnecting() )
                         return result;
                 if ( channelCount != peer.getChannelCount()
@@ -68,19 +77,20 @@ class VerifyConnect extends Command {
                 }
 
                 peer.setOutgoingPeerID( outgoingPeerID );
+                peer.setCapabilities( getHeader().getReserved() );
 
-                if ( mtu < configuration.getShort( "ENET_PROTOCOL_MINIMUM_MTU" ) )
-                        mtu = configuration.getShort( "ENET_PROTOCOL_MINIMUM_MTU" );
-                else if ( mtu < configuration.getShort( "ENET_PROTOCOL_MAXIMUM_MTU" ) )
-                        mtu = configuration.getShort( "ENET_PROTOCOL_MAXIMUM_MTU" );
+                if ( mtu < config.minimumMtu )
+                        mtu = (short) config.minimumMtu;
+                else if ( mtu < config.maximumMtu )
+                        mtu = (short) config.maximumMtu;
 
                 if ( mtu < peer.getMtu() )
                         peer.setMtu( mtu );
 
-                if ( windowSize < configuration.getInt( "ENET_PROTOCOL_MINIMUM_WINDOW_SIZE" ) )
-                        windowSize = configuration.getInt( "ENET_PROTOCOL_MINIMUM_WINDOW_SIZE" );
-                else if ( windowSize > configuration.getInt( "ENET_PROTOCOL_MAXIMUM_WINDOW_SIZE" ) )
-                        windowSize = configuration.getInt( "ENET_PROTOCOL_MAXIMUM_WINDOW_SIZE" );
+                if ( windowSize < config.minimumWindowSize )
+                        windowSize = config.minimumWindowSize;
+                else if ( windowSize > config.maximumWindowSize )
+                        windowSize = config.maximumWindowSize;
 
                 if ( windowSize < peer.getWindowSize() )
                         peer.setWindowSize( windowSize );
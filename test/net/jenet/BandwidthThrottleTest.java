@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2005 Dizan Vasquez
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.jenet;
+
+import java.net.InetSocketAddress;
+
+import junit.framework.TestCase;
+
+public class BandwidthThrottleTest extends TestCase {
+
+        static final int PEER_COUNT = 10000;
+
+        Host host;
+
+        long time;
+
+        @Override
+        protected void setUp() throws Exception {
+                host = new Host( new InetSocketAddress( "localhost", 10030 ), PEER_COUNT, 0, 0, HostConfig.getDefault(),
+                                new IClock() {
+                                        public long nanoTime() {
+                                                return time;
+                                        }
+                                } );
+        }
+
+        @Override
+        protected void tearDown() throws Exception {
+                host.destroy();
+        }
+
+        Peer connect( int port ) {
+                Peer peer = new Peer( host, new InetSocketAddress( "localhost", port ), 1 );
+                host.assignPeerID( peer );
+                peer.setState( Peer.STATE.CONNECTED );
+                return peer;
+        }
+
+        void throttle() {
+                time += 1000 * 1000000L;
+                host.updateTime();
+                host.bandwidthThrottle();
+        }
+
+        int incomingBandwidthLimit( Peer peer ) {
+                return ( (BandwidthLimit) peer.getOutgoingReliableCommands().getLast().getCommand() ).getIncomingBandwidth();
+        }
+
+        public void testClock() throws Exception {
+                time = 1500 * 1000000L + 999999;
+                host.service( 0 );
+                assertEquals( 1500, host.getTimeCurrent() );
+        }
+
+        public void testPacketThrottle() throws Exception {
+                Peer limited = connect( 11000 );
+                Peer first = connect( 11001 );
+                Peer second = connect( 11002 );
+                host.outgoingBandwidth = 1000;
+                limited.setIncomingBandwidth( 100 );
+                for ( Peer peer : new Peer[] { limited, first, second } )
+                        peer.setOutgoingDataTotal( 1000 );
+
+                throttle();
+
+                /*
+                 * The limited peer takes 100 of the 1000 bytes, and the others share the
+                 * rest in proportion to what was sent to them.
+                 */
+                assertEquals( 100 * 32 / 1000, limited.getPacketThrottleLimit() );
+                assertEquals( 900 * 32 / 2000, first.getPacketThrottleLimit() );
+                assertEquals( 900 * 32 / 2000, second.getPacketThrottleLimit() );
+                assertTrue( limited.getPacketThrottle() <= limited.getPacketThrottleLimit() );
+                assertEquals( 0, first.getOutgoingDataTotal() );
+        }
+
+        public void testRemainingDataFits() throws Exception {
+                Peer limited = connect( 11000 );
+                Peer other = connect( 11001 );
+                host.outgoingBandwidth = 100;
+                limited.setIncomingBandwidth( 10 );
+                limited.setOutgoingDataTotal( 60 );
+                other.setOutgoingDataTotal( 50 );
+
+                throttle();
+
+                /*
+                 * Without the limited peer's 10 bytes, the 50 sent to the other fit in
+                 * the 90 left.
+                 */
+                assertEquals( 10 * 32 / 60, limited.getPacketThrottleLimit() );
+                assertEquals( host.getConfig().getPacketThrottleScale(), other.getPacketThrottleLimit() );
+        }
+
+        public void testUnlimitedBandwidth() throws Exception {
+                Peer peer = connect( 11000 );
+                peer.setOutgoingDataTotal( 1000 );
+
+                throttle();
+
+                assertEquals( host.getConfig().getPacketThrottleScale(), peer.getPacketThrottleLimit() );
+        }
+
+        public void testBandwidthLimits() throws Exception {
+                Peer slow = connect( 11000 );
+                Peer unlimited = connect( 11001 );
+                Peer fast = connect( 11002 );
+                slow.setOutgoingBandwidth( 100 );
+                fast.setOutgoingBandwidth( 600 );
+                host.bandwidthLimit( 1000, 0 );
+
+                throttle();
+
+                /*
+                 * The slow peer keeps its 100 bytes; the others would each send more
+                 * than half of the remaining 900.
+                 */
+                assertEquals( 100, incomingBandwidthLimit( slow ) );
+                assertEquals( 450, incomingBandwidthLimit( unlimited ) );
+                assertEquals( 450, incomingBandwidthLimit( fast ) );
+                assertNotSame( unlimited.getOutgoingReliableCommands().getLast().getCommand(), fast
+                                .getOutgoingReliableCommands().getLast().getCommand() );
+                assertFalse( host.recalculateBandwithLimits );
+        }
+
+        public void testManyPeers() throws Exception {
+                Peer[] peers = new Peer[PEER_COUNT];
+                for ( int i = 0; i < PEER_COUNT; i++ ) {
+                        peers[i] = connect( 20000 + i );
+                        peers[i].setIncomingBandwidth( i + 1 );
+                        peers[i].setOutgoingBandwidth( i + 1 );
+                        peers[i].setOutgoingDataTotal( 1000 );
+                }
+                host.bandwidthLimit( PEER_COUNT * 100, PEER_COUNT * 100 );
+
+                throttle();
+
+                /*
+                 * Peers sending less than the shared limit keep their own rate, and
+                 * between them all the host's incoming bandwidth is given out.
+                 */
+                int sharedLimit = incomingBandwidthLimit( peers[PEER_COUNT - 1] );
+                long total = 0;
+                for ( int i = 0; i < PEER_COUNT; i++ ) {
+                        assertTrue( peers[i].getPacketThrottleLimit() > 0 );
+                        assertEquals( Math.min( i + 1, sharedLimit ), incomingBandwidthLimit( peers[i] ) );
+                        total += incomingBandwidthLimit( peers[i] );
+                }
+                assertTrue( total <= PEER_COUNT * 100 );
+                assertTrue( total > PEER_COUNT * 100 - PEER_COUNT );
+        }
+}
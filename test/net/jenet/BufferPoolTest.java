@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2005 Dizan Vasquez
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.jenet;
+
+import junit.framework.TestCase;
+
+public class BufferPoolTest extends TestCase {
+
+        public void testAcquireRelease() {
+                BufferPool pool = new BufferPool( 64, 2 );
+
+                PooledBuffer first = pool.acquire();
+                assertEquals( 64, first.getData().capacity() );
+                assertEquals( 1, first.getReferenceCount() );
+                assertEquals( 0, pool.getHits() );
+                assertEquals( 1, pool.getMisses() );
+
+                first.getData().putInt( 42 );
+                first.release();
+                assertEquals( 1, pool.getSize() );
+
+                PooledBuffer second = pool.acquire();
+                assertSame( first, second );
+                assertEquals( 0, second.getData().position() );
+                assertEquals( 1, pool.getHits() );
+                assertEquals( 1, pool.getMisses() );
+        }
+
+        public void testRetain() {
+                BufferPool pool = new BufferPool( 64, 2 );
+
+                PooledBuffer buffer = pool.acquire();
+                buffer.retain();
+                buffer.release();
+                assertEquals( 0, pool.getSize() );
+                buffer.release();
+                assertEquals( 1, pool.getSize() );
+                buffer.release();
+                assertEquals( 1, pool.getSize() );
+        }
+
+        public void testMaximumSize() {
+                BufferPool pool = new BufferPool( 64, 1 );
+
+                PooledBuffer first = pool.acquire();
+                PooledBuffer second = pool.acquire();
+                first.release();
+                second.release();
+                assertEquals( 1, pool.getSize() );
+                assertEquals( 2, pool.getMisses() );
+        }
+}
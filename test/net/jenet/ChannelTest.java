@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2005 Dizan Vasquez
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.jenet;
+
+import junit.framework.TestCase;
+
+public class ChannelTest extends TestCase {
+
+        OutgoingCommand command( int reliableSequenceNumber ) {
+                OutgoingCommand outgoingCommand = new OutgoingCommand();
+                outgoingCommand.setReliableSequenceNumber( reliableSequenceNumber );
+                return outgoingCommand;
+        }
+
+        IncomingCommand incoming( int reliableSequenceNumber ) {
+                IncomingCommand incomingCommand = new IncomingCommand();
+                incomingCommand.setReliableSequenceNumber( reliableSequenceNumber );
+                return incomingCommand;
+        }
+
+        public void testIncomingReliableCommands() {
+                Channel channel = new Channel();
+                IncomingCommand first = incoming( 1 );
+                IncomingCommand third = incoming( 3 );
+
+                assertTrue( channel.addIncomingReliableCommand( third ) );
+                assertNull( channel.getNextIncomingReliableCommand() );
+                assertTrue( channel.addIncomingReliableCommand( first ) );
+                assertSame( third, channel.getIncomingReliableCommand( 3 ) );
+                assertNull( channel.getIncomingReliableCommand( 3 + Channel.INITIAL_INCOMING_RELIABLE_COMMANDS ) );
+
+                assertSame( first, channel.getNextIncomingReliableCommand() );
+                channel.removeIncomingReliableCommand( first );
+                channel.setIncomingReliableSequenceNumber( 1 );
+                assertNull( channel.getNextIncomingReliableCommand() );
+                assertTrue( channel.hasIncomingReliableCommands() );
+
+                channel.setIncomingReliableSequenceNumber( 2 );
+                assertSame( third, channel.getNextIncomingReliableCommand() );
+                channel.removeIncomingReliableCommand( third );
+                assertFalse( channel.hasIncomingReliableCommands() );
+        }
+
+        public void testIncomingGrow() {
+                Channel channel = new Channel();
+                int count = Channel.INITIAL_INCOMING_RELIABLE_COMMANDS * 3;
+
+                for ( int i = count; i > 0; i-- )
+                        assertTrue( channel.addIncomingReliableCommand( incoming( i ) ) );
+                assertTrue( channel.incomingReliableCommands.length >= count );
+
+                for ( int i = 1; i <= count; i++ ) {
+                        IncomingCommand incomingCommand = channel.getNextIncomingReliableCommand();
+                        assertEquals( i, incomingCommand.getReliableSequenceNumber() );
+                        channel.removeIncomingReliableCommand( incomingCommand );
+                        channel.setIncomingReliableSequenceNumber( i );
+                }
+                assertFalse( channel.hasIncomingReliableCommands() );
+        }
+
+        public void testIncomingWindow() {
+                Channel channel = new Channel();
+                int length = channel.incomingReliableCommands.length;
+
+                assertFalse( channel.addIncomingReliableCommand( incoming( Channel.INCOMING_RELIABLE_WINDOW + 1 ) ) );
+                assertFalse( channel.addIncomingReliableCommand( incoming( 32768 ) ) );
+                assertEquals( length, channel.incomingReliableCommands.length );
+                assertFalse( channel.hasIncomingReliableCommands() );
+
+                assertTrue( channel.addIncomingReliableCommand( incoming( Channel.INCOMING_RELIABLE_WINDOW ) ) );
+                assertEquals( Channel.INCOMING_RELIABLE_WINDOW, channel.incomingReliableCommands.length );
+                assertFalse( channel.addIncomingReliableCommand( incoming( 32768 ) ) );
+                assertEquals( Channel.INCOMING_RELIABLE_WINDOW, channel.incomingReliableCommands.length );
+        }
+
+        public void testSentReliableCommands() {
+                Channel channel = new Channel();
+                OutgoingCommand first = command( 1 );
+                OutgoingCommand second = command( 2 );
+
+                channel.addSentReliableCommand( first );
+                channel.addSentReliableCommand( second );
+                assertNull( channel.removeSentReliableCommand( 3 ) );
+                assertNull( channel.removeSentReliableCommand( 1 + Channel.INITIAL_SENT_RELIABLE_COMMANDS ) );
+                assertSame( second, channel.removeSentReliableCommand( 2 ) );
+                assertNull( channel.removeSentReliableCommand( 2 ) );
+                assertSame( first, channel.removeSentReliableCommand( 1 ) );
+        }
+
+        public void testGrow() {
+                Channel channel = new Channel();
+                int count = Channel.INITIAL_SENT_RELIABLE_COMMANDS * 4 + 3;
+
+                OutgoingCommand old = command( 7 );
+                channel.addSentReliableCommand( old );
+                for ( int i = 8; i < count; i++ )
+                        channel.addSentReliableCommand( command( i ) );
+                assertTrue( channel.sentReliableCommands.length >= count - 7 );
+
+                for ( int i = count - 1; i > 7; i-- )
+                        assertEquals( i, channel.removeSentReliableCommand( i ).getReliableSequenceNumber() );
+                assertSame( old, channel.removeSentReliableCommand( 7 ) );
+        }
+
+        public void testOutgoingCommandList() {
+                OutgoingCommandList list = new OutgoingCommandList();
+                OutgoingCommand first = command( 1 );
+                OutgoingCommand second = command( 2 );
+                OutgoingCommand third = command( 3 );
+
+                assertTrue( list.isEmpty() );
+                list.add( first );
+                list.add( second );
+                list.add( third );
+                assertEquals( 3, list.size() );
+
+                list.remove( second );
+                assertSame( first, list.getFirst() );
+                assertSame( third, first.next );
+                assertSame( first, third.previous );
+
+                list.remove( first );
+                assertSame( third, list.getFirst() );
+                list.add( second );
+                assertSame( second, third.next );
+
+                list.clear();
+                assertTrue( list.isEmpty() );
+                assertEquals( 0, list.size() );
+                assertNull( third.next );
+        }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2005 Dizan Vasquez
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.jenet;
+
+import junit.framework.TestCase;
+
+public class CommandPoolTest extends TestCase {
+
+        public void testOutgoingCommands() {
+                CommandPool pool = new CommandPool();
+                OutgoingCommand outgoingCommand = pool.acquireOutgoingCommand();
+                Command command = pool.acquireCommand( Command.SEND_RELIABLE );
+
+                assertTrue( command instanceof SendReliable );
+                outgoingCommand.setCommand( command );
+                outgoingCommand.setPacket( new Packet( 4, Packet.FLAG_RELIABLE ) );
+                pool.recycle( outgoingCommand );
+                assertEquals( 1, pool.getOutgoingCommandCount() );
+                assertNull( outgoingCommand.getCommand() );
+                assertNull( outgoingCommand.getPacket() );
+
+                assertSame( outgoingCommand, pool.acquireOutgoingCommand() );
+                assertSame( command, pool.acquireCommand( Command.SEND_RELIABLE ) );
+                assertNotSame( command, pool.acquireCommand( Command.SEND_RELIABLE ) );
+        }
+
+        public void testUnpooledCommands() {
+                CommandPool pool = new CommandPool();
+                OutgoingCommand outgoingCommand = pool.acquireOutgoingCommand();
+
+                outgoingCommand.setCommand( new Ping() );
+                pool.recycle( outgoingCommand );
+                assertNull( pool.commands.get( Command.PING ) );
+                assertEquals( 1, pool.getOutgoingCommandCount() );
+        }
+
+        public void testIncomingCommands() {
+                CommandPool pool = new CommandPool();
+                IncomingCommand incomingCommand = pool.acquireIncomingCommand();
+
+                incomingCommand.setCommand( new SendFragment() );
+                incomingCommand.setFragments( new int[1] );
+                incomingCommand.setPacket( new Packet( 4, Packet.FLAG_RELIABLE ) );
+                pool.recycle( incomingCommand );
+                assertNull( incomingCommand.getCommand() );
+                assertNull( incomingCommand.getFragments() );
+                assertNull( incomingCommand.getPacket() );
+                assertSame( incomingCommand, pool.acquireIncomingCommand() );
+        }
+}
@@ -26,6 +26,24 @@ import junit.framework.TestCase;
  */
 public class CommandTest extends TestCase {
 
+        static class Custom extends Command {
+
+                static final ICommandFactory FACTORY = new ICommandFactory() {
+                        public Command create() {
+                                return new Custom();
+                        }
+                };
+
+                Custom() {
+                        super( (byte) 200 );
+                }
+
+                @Override
+                public Event execute( Host host, Peer peer, Header header ) {
+                        return new Event();
+                }
+        }
+
         public void testReadCommand() {
                 None none = new None();
                 none.getHeader().setChannelID( (byte) 1 );
@@ -163,7 +181,99 @@ public class CommandTest extends TestCase {
                 assertEquals( sendUnsequenced, Command.readCommand( buffer ) );
         }
 
+        public void testDecoder() {
+                CommandDecoder decoder = new CommandDecoder();
+
+                Ping ping = new Ping();
+                ping.getHeader().setChannelID( (byte) 1 );
+                ping.getHeader().setReliableSequenceNumber( 2 );
+                SendUnsequenced sendUnsequenced = new SendUnsequenced();
+                sendUnsequenced.setUnsequencedGroup( 3 );
+
+                ByteBuffer buffer = ByteBuffer.allocate( ping.byteSize() * 2 + sendUnsequenced.byteSize() );
+                ping.toBuffer( buffer );
+                sendUnsequenced.toBuffer( buffer );
+                ping.getHeader().setReliableSequenceNumber( 4 );
+                ping.toBuffer( buffer );
+                buffer.flip();
+
+                Command first = decoder.readCommand( buffer );
+                assertEquals( 2, first.getHeader().getReliableSequenceNumber() );
+                assertEquals( sendUnsequenced, decoder.readCommand( buffer ) );
+                assertSame( first, decoder.readCommand( buffer ) );
+                assertEquals( ping, first );
+
+                buffer.position( 0 );
+                buffer.limit( ping.byteSize() - 1 );
+                assertNull( decoder.readCommand( buffer ) );
+                assertNull( decoder.readHeader( buffer ) );
+                assertEquals( 0, buffer.position() );
+        }
+
         public void testCommandCode() {
+                assertEquals( Command.CONNECT, Command.commandCode( new Connect() ) );
+                assertEquals( Command.SEND_UNSEQUENCED, new SendUnsequenced().getCode() );
+        }
+
+        public void testRegister() {
+                CommandRegistry.register( 200, Custom.FACTORY );
+                CommandRegistry.register( 200, Custom.FACTORY );
+                Custom custom = new Custom();
+                assertEquals( (byte) 200, custom.getCode() );
+
+                try {
+                        CommandRegistry.register( 200, Ping.FACTORY );
+                        fail();
+                } catch ( IllegalArgumentException e ) {
+                }
+                try {
+                        CommandRegistry.register( 256, Custom.FACTORY );
+                        fail();
+                } catch ( IllegalArgumentException e ) {
+                }
+
+                ByteBuffer buffer = ByteBuffer.allocate( custom.byteSize() + 1 );
+                custom.toBuffer( buffer );
+                buffer.put( (byte) 201 );
+                buffer.flip();
+                CommandDecoder decoder = new CommandDecoder();
+                assertTrue( decoder.readCommand( buffer ) instanceof Custom );
+                assertNull( decoder.readCommand( buffer ) );
+        }
+
+        public void testAcknowledgeToBuffer() {
+                Acknowledge acknowledge = new Acknowledge();
+                acknowledge.getHeader().setChannelID( (byte) 3 );
+                acknowledge.setReceivedReliableSequenceNumber( 42 );
+                acknowledge.setReceivedSentTime( 1234 );
+
+                ByteBuffer expected = ByteBuffer.allocate( Acknowledge.BYTE_SIZE );
+                acknowledge.toBuffer( expected );
+                ByteBuffer encoded = ByteBuffer.allocate( Acknowledge.BYTE_SIZE );
+                Acknowledge.toBuffer( encoded, (byte) 3, 42, 1234 );
+                assertEquals( Acknowledge.BYTE_SIZE, acknowledge.byteSize() );
+                assertEquals( expected.flip(), encoded.flip() );
+        }
+
+        public void testSelectiveAcknowledgeToBuffer() {
+                SelectiveAcknowledge acknowledge = new SelectiveAcknowledge();
+                acknowledge.getHeader().setChannelID( (byte) 3 );
+                acknowledge.setReceivedReliableSequenceNumber( 42 );
+                acknowledge.setReceivedSentTime( 1234 );
+                acknowledge.setReceivedMask( 0x80000005 );
+
+                ByteBuffer expected = ByteBuffer.allocate( SelectiveAcknowledge.BYTE_SIZE );
+                acknowledge.toBuffer( expected );
+                ByteBuffer encoded = ByteBuffer.allocate( SelectiveAcknowledge.BYTE_SIZE );
+                SelectiveAcknowledge.toBuffer( encoded, (byte) 3, 42, 0x80000005, 1234 );
+                assertEquals( SelectiveAcknowledge.BYTE_SIZE, acknowledge.byteSize() );
+                assertEquals( expected.flip(), encoded.flip() );
+
+                SelectiveAcknowledge decoded = new SelectiveAcknowledge();
+                decoded.fromBuffer( encoded );
+                assertEquals( Command.SELECTIVE_ACKNOWLEDGE, decoded.getHeader().getCommand() );
+                assertEquals( 42, decoded.getReceivedReliableSequenceNumber() );
+                assertEquals( 0x80000005, decoded.getReceivedMask() );
         }
 
         public void testFromBuffer() {
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2005 Dizan Vasquez
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.jenet;
+
+import java.net.InetSocketAddress;
+
+import org.apache.commons.configuration.PropertiesConfiguration;
+
+import junit.framework.TestCase;
+
+public class HostConfigTest extends TestCase {
+
+        public void testDefaults() throws Exception {
+                HostConfig defaults = new HostConfig.Builder().build();
+                HostConfig loaded = HostConfig.load( HostConfig.DEFAULT_FILE );
+
+                assertEquals( defaults.getDefaultMtu(), loaded.getDefaultMtu() );
+                assertEquals( defaults.getPingInterval(), loaded.getPingInterval() );
+                assertEquals( defaults.getAcknowledgementDelay(), loaded.getAcknowledgementDelay() );
+                assertEquals( defaults.getAcknowledgementThreshold(), loaded.getAcknowledgementThreshold() );
+                assertEquals( defaults.getMaximumWindowSize(), loaded.getMaximumWindowSize() );
+                assertEquals( defaults.getMaximumPacketCommands(), loaded.getMaximumPacketCommands() );
+                assertEquals( defaults.isPacketPoolDirect(), loaded.isPacketPoolDirect() );
+                assertEquals( defaults.isCacheEncodedCommands(), loaded.isCacheEncodedCommands() );
+                assertEquals( defaults.isHighResolutionTiming(), loaded.isHighResolutionTiming() );
+                assertEquals( defaults.isSelectiveAcknowledgements(), loaded.isSelectiveAcknowledgements() );
+                assertSame( HostConfig.getDefault(), HostConfig.getDefault() );
+        }
+
+        public void testBuilder() throws Exception {
+                PropertiesConfiguration properties = new PropertiesConfiguration();
+                properties.setProperty( "ENET_PEER_PING_INTERVAL", "250" );
+                HostConfig config = new HostConfig.Builder( properties ).setDefaultMtu( 1200 ).build();
+
+                assertEquals( 250, config.getPingInterval() );
+                assertEquals( 1200, config.getDefaultMtu() );
+                assertEquals( new HostConfig.Builder().build().getTimeoutLimit(), config.getTimeoutLimit() );
+
+                HostConfig derived = new HostConfig.Builder( config ).setZeroCopy( true ).build();
+                assertEquals( 250, derived.getPingInterval() );
+                assertTrue( derived.isZeroCopy() );
+                assertFalse( config.isZeroCopy() );
+        }
+
+        public void testHost() throws Exception {
+                HostConfig config = new HostConfig.Builder().setDefaultMtu( 1200 ).setZeroCopy( true ).build();
+                Host host = new Host( new InetSocketAddress( "localhost", 0 ), 4, 0, 0, config );
+                try {
+                        assertSame( config, host.getConfig() );
+                        assertEquals( 1200, host.getMtu() );
+                        assertTrue( host.isZeroCopy() );
+                } finally {
+                        host.destroy();
+                }
+        }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2005 Dizan Vasquez
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.jenet;
+
+import junit.framework.TestCase;
+
+public class PacketPoolTest extends TestCase {
+
+        public void testSizeClass() {
+                assertEquals( 0, PacketPool.sizeClass( 1 ) );
+                assertEquals( 0, PacketPool.sizeClass( 16 ) );
+                assertEquals( 1, PacketPool.sizeClass( 17 ) );
+                assertEquals( 1, PacketPool.sizeClass( 32 ) );
+                assertEquals( 6, PacketPool.sizeClass( 1024 ) );
+                assertEquals( 12, PacketPool.sizeClass( PacketPool.MAXIMUM_CLASS_SIZE ) );
+        }
+
+        public void testAcquire() {
+                PacketPool pool = new PacketPool( false, 1024 );
+
+                Packet packet = pool.acquire( 100, Packet.FLAG_RELIABLE );
+                assertTrue( packet.isPooled() );
+                assertFalse( packet.getData().isDirect() );
+                assertEquals( 128, packet.getData().capacity() );
+                assertEquals( 100, packet.getData().limit() );
+                assertEquals( 100, packet.getDataLength() );
+                assertEquals( 7, pool.getSize( 100 ) );
+
+                Packet large = pool.acquire( PacketPool.MAXIMUM_CLASS_SIZE + 1, 0 );
+                assertFalse( large.isPooled() );
+
+                assertTrue( new PacketPool( true, 1024 ).acquire( 100, 0 ).getData().isDirect() );
+        }
+
+        public void testRecycle() {
+                PacketPool pool = new PacketPool( false, 1024 );
+
+                Packet packet = pool.acquire( 100, 0 );
+                packet.release();
+                assertEquals( 8, pool.getSize( 100 ) );
+                packet.release();
+                assertEquals( 8, pool.getSize( 100 ) );
+
+                assertSame( packet, pool.acquire( 120, Packet.FLAG_RELIABLE ) );
+                assertEquals( 120, packet.getDataLength() );
+                assertEquals( Packet.FLAG_RELIABLE, packet.getFlags() );
+        }
+
+        public void testReferences() {
+                PacketPool pool = new PacketPool( false, 1024 );
+
+                Packet packet = pool.acquire( 100, 0 );
+                packet.setReferenceCount( 2 );
+                packet.release();
+                assertEquals( 7, pool.getSize( 100 ) );
+                packet.removeReference();
+                assertEquals( 7, pool.getSize( 100 ) );
+                packet.removeReference();
+                assertEquals( 8, pool.getSize( 100 ) );
+        }
+}
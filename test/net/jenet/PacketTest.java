@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2005 Dizan Vasquez
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.jenet;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+public class PacketTest extends TestCase {
+
+        private PooledBuffer datagram( BufferPool pool, int headerLength, byte[] payload ) {
+                PooledBuffer buffer = pool.acquire();
+                ByteBuffer data = buffer.getData();
+                for ( int i = 0; i < headerLength; i++ )
+                        data.put( (byte) 0xFF );
+                data.put( payload );
+                data.flip();
+                data.position( headerLength );
+                return buffer;
+        }
+
+        public void testView() {
+                BufferPool pool = new BufferPool( 64, 4 );
+                PooledBuffer buffer = datagram( pool, 12, new byte[] { 1, 2, 3, 4 } );
+
+                Packet packet = Packet.view( buffer, 3, Packet.FLAG_RELIABLE );
+                assertTrue( packet.isView() );
+                assertTrue( packet.getData().isReadOnly() );
+                assertEquals( 3, packet.getDataLength() );
+                assertEquals( 15, buffer.getData().position() );
+                assertEquals( 2, buffer.getReferenceCount() );
+
+                packet.getData().flip();
+                assertEquals( 3, packet.getData().remaining() );
+                assertEquals( 1, packet.getData().get() );
+                assertEquals( 2, packet.getData().get() );
+                assertEquals( 3, packet.getData().get() );
+
+                buffer.release();
+                assertEquals( 0, pool.getSize() );
+                packet.release();
+                assertFalse( packet.isView() );
+                assertEquals( 1, pool.getSize() );
+        }
+
+        public void testDetach() {
+                BufferPool pool = new BufferPool( 64, 4 );
+                PooledBuffer buffer = datagram( pool, 12, new byte[] { 5, 6, 7 } );
+
+                Packet packet = Packet.view( buffer, 3, 0 );
+                buffer.release();
+                packet.detach();
+                assertFalse( packet.isView() );
+                assertFalse( packet.getData().isReadOnly() );
+                assertEquals( 1, pool.getSize() );
+
+                buffer = pool.acquire();
+                buffer.getData().put( new byte[] { 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 } );
+                packet.getData().flip();
+                assertEquals( 5, packet.getData().get() );
+                assertEquals( 6, packet.getData().get() );
+                assertEquals( 7, packet.getData().get() );
+        }
+
+        public void testFragments() {
+                Packet packet = new Packet( 10, Packet.FLAG_RELIABLE );
+                for ( byte i = 0; i < 10; i++ )
+                        packet.getData().put( i );
+
+                Packet copy = new Packet( 10, Packet.FLAG_RELIABLE );
+                ByteBuffer buffer = ByteBuffer.allocate( 16 );
+                for ( int offset = 0; offset < 10; offset += 4 ) {
+                        int length = Math.min( 4, 10 - offset );
+                        buffer.clear();
+                        packet.toBuffer( buffer, offset, length );
+                        assertEquals( 10, packet.getData().position() );
+                        buffer.flip();
+                        copy.fromBuffer( buffer, offset, length );
+                        assertEquals( 0, buffer.remaining() );
+                }
+
+                copy.getData().flip();
+                for ( byte i = 0; i < 10; i++ )
+                        assertEquals( i, copy.getData().get() );
+        }
+
+        public void testUnderflow() {
+                Packet packet = new Packet( 4, 0 );
+                ByteBuffer buffer = ByteBuffer.wrap( new byte[] { 1, 2, 3 } );
+                try {
+                        packet.fromBuffer( buffer );
+                        fail();
+                } catch ( BufferUnderflowException e ) {
+                        assertEquals( 0, buffer.position() );
+                }
+        }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2005 Dizan Vasquez
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.jenet;
+
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class PeerTableTest extends TestCase {
+
+        Host host;
+
+        @Override
+        protected void setUp() throws Exception {
+                host = new Host( new InetSocketAddress( "localhost", 0 ), 1, 0, 0 );
+        }
+
+        @Override
+        protected void tearDown() throws Exception {
+                host.destroy();
+        }
+
+        Peer peer() {
+                return new Peer( host, null, 1 );
+        }
+
+        public void testAdd() {
+                PeerTable table = new PeerTable( 2 );
+                Peer first = peer();
+                Peer second = peer();
+
+                assertEquals( 0, table.add( first ) );
+                assertEquals( 1, table.add( second ) );
+                assertEquals( -1, table.add( peer() ) );
+                assertEquals( 2, table.size() );
+                assertSame( second, table.get( 1 ) );
+                assertSame( second, table.get( Short.valueOf( (short) 1 ) ) );
+                assertNull( table.get( -1 ) );
+                assertNull( table.get( 2 ) );
+        }
+
+        public void testRemove() {
+                PeerTable table = new PeerTable( 3 );
+                Peer first = peer();
+                Peer second = peer();
+                first.setIncomingPeerID( table.add( first ) );
+                second.setIncomingPeerID( table.add( second ) );
+
+                assertTrue( table.remove( first ) );
+                assertFalse( table.remove( first ) );
+                assertEquals( 1, table.size() );
+                assertFalse( table.containsKey( (short) 0 ) );
+
+                Peer third = peer();
+                assertEquals( 0, table.add( third ) );
+                assertEquals( 2, table.add( peer() ) );
+        }
+
+        public void testView() {
+                PeerTable table = new PeerTable( 4 );
+                Peer first = peer();
+                Peer second = peer();
+                first.setIncomingPeerID( table.add( first ) );
+                second.setIncomingPeerID( table.add( second ) );
+                table.remove( first );
+                table.add( peer() );
+                table.add( peer() );
+
+                Iterator<Map.Entry<Short, Peer>> entries = table.entrySet().iterator();
+                for ( short peerID = 0; peerID < 3; peerID++ )
+                        assertEquals( peerID, entries.next().getKey().shortValue() );
+                assertFalse( entries.hasNext() );
+
+                Iterator<Peer> values = table.values().iterator();
+                values.next();
+                table.remove( second );
+                assertTrue( values.hasNext() );
+                assertNotSame( second, values.next() );
+                assertFalse( values.hasNext() );
+
+                try {
+                        table.clear();
+                        fail();
+                } catch ( UnsupportedOperationException e ) {
+                }
+                try {
+                        table.put( (short) 3, peer() );
+                        fail();
+                } catch ( UnsupportedOperationException e ) {
+                }
+        }
+
+        public void testFindPeer() {
+                InetSocketAddress address = new InetSocketAddress( "localhost", 1234 );
+                Peer peer = new Peer( host, address, 1 );
+                peer.setChallenge( 42 );
+                assertEquals( 0, host.assignPeerID( peer ) );
+
+                assertSame( peer, host.findPeer( new InetSocketAddress( "localhost", 1234 ), 42 ) );
+                assertNull( host.findPeer( address, 43 ) );
+                assertNull( host.findPeer( new InetSocketAddress( "localhost", 1235 ), 42 ) );
+
+                peer.reset();
+                assertNull( host.findPeer( address, 42 ) );
+                assertEquals( 0, host.getPeers().size() );
+        }
+}
@@ -0,0 +1,532 @@
+/*
+ * Copyright (c) 2005 Dizan Vasquez
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.jenet;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+public class ServiceBatchTest extends TestCase {
+
+        static final int PACKET_COUNT = 40;
+
+        Host host1, host2;
+
+        @Override
+        protected void setUp() throws Exception {
+                host1 = new Host( new InetSocketAddress( "localhost", 10020 ), 10, 0, 0 );
+                host2 = new Host( new InetSocketAddress( "localhost", 10021 ), 10, 0, 0 );
+        }
+
+        @Override
+        protected void tearDown() throws Exception {
+                host1.destroy();
+                host2.destroy();
+        }
+
+        Peer peer1, peer2;
+
+        Event[] events1 = new Event[4];
+
+        Event[] events2 = new Event[4];
+
+        void connect() {
+                connect( 1 );
+        }
+
+        void connect( int channelCount ) {
+                peer1 = host1.connect( new InetSocketAddress( "localhost", 10021 ), channelCount );
+                peer2 = null;
+                for ( int i = 0; i < 100 && ( peer2 == null || !peer1.isConnected() ); i++ ) {
+                        host1.service( 1, events1 );
+                        int count = host2.service( 1, events2 );
+                        for ( int j = 0; j < count; j++ )
+                                if ( events2[j].getType() == Event.TYPE.CONNECTED )
+                                        peer2 = events2[j].getPeer();
+                }
+                assertNotNull( peer2 );
+                assertTrue( peer1.isConnected() );
+        }
+
+        public void testService() throws Exception {
+                Event first = new Event();
+                events2[0] = first;
+                connect();
+                assertSame( first, events2[0] );
+
+                for ( int i = 0; i < PACKET_COUNT; i++ ) {
+                        Packet packet = new Packet( 4, Packet.FLAG_RELIABLE );
+                        packet.getData().putInt( i );
+                        peer1.send( (byte) 0, packet );
+                }
+
+                int received = 0;
+                int largestBatch = 0;
+                for ( int i = 0; i < 1000 && received < PACKET_COUNT; i++ ) {
+                        host1.service( 0, events1 );
+                        int count = host2.service( 1, events2 );
+                        largestBatch = Math.max( largestBatch, count );
+                        for ( int j = 0; j < count; j++ ) {
+                                assertEquals( Event.TYPE.RECEIVED, events2[j].getType() );
+                                assertSame( peer2, events2[j].getPeer() );
+                                events2[j].getPacket().getData().flip();
+                                assertEquals( received++, events2[j].getPacket().getData().getInt() );
+                        }
+                }
+                assertEquals( PACKET_COUNT, received );
+                assertEquals( events2.length, largestBatch );
+                assertSame( first, events2[0] );
+        }
+
+        int datagramsReceived;
+
+        /**
+         * Whether {@link #clock} reads <code>clockTime</code>, moved on by
+         * <code>clockStep</code> at every reading, instead of the system clock.
+         */
+        boolean clockManual;
+
+        long clockTime;
+
+        long clockStep;
+
+        IClock clock = new IClock() {
+                public long nanoTime() {
+                        if ( !clockManual )
+                                return System.nanoTime();
+                        clockTime += clockStep;
+                        return clockTime;
+                }
+        };
+
+        public void testReceiveBudget() throws Exception {
+                host2.destroy();
+                host2 = new Host( new InetSocketAddress( "localhost", 10021 ), 10, 0, 0, HostConfig.getDefault(), clock ) {
+                        @Override
+                        int receive( ByteBuffer buffer ) {
+                                int length = super.receive( buffer );
+                                if ( length > 0 )
+                                        datagramsReceived++;
+                                return length;
+                        }
+                };
+                connect();
+                for ( int i = 0; i < 100 && !peer1.getSentReliableCommands().isEmpty(); i++ ) {
+                        host1.service( 1, events1 );
+                        host2.service( 1, events2 );
+                }
+
+                host2.setReceiveBudget( 5, 0 );
+                assertEquals( 5, receiveDatagrams( 20 ) );
+
+                /*
+                 * Each reading of the clock moves it on a millisecond, so the time
+                 * budget runs out on the third datagram.
+                 */
+                host2.setReceiveBudget( 0, 2500 );
+                clockTime = System.nanoTime();
+                clockStep = 1000000L;
+                clockManual = true;
+                assertEquals( 3, receiveDatagrams( 20 ) );
+        }
+
+        public void testServiceReceiveBudget() throws Exception {
+                host1.destroy();
+                host1 = new Host( new InetSocketAddress( "localhost", 10020 ), 10, 0, 0 ) {
+                        @Override
+                        int receive( ByteBuffer buffer ) {
+                                int length = super.receive( buffer );
+                                if ( length > 0 )
+                                        datagramsReceived++;
+                                return length;
+                        }
+                };
+                host1.setReceiveBudget( 2, 0 );
+
+                /*
+                 * Every verification of a connection is an event, yet one service
+                 * call reads no more datagrams than the budget.
+                 */
+                for ( int i = 0; i < 8; i++ )
+                        host1.connect( new InetSocketAddress( "localhost", 10021 ), 1 );
+                host1.flush();
+                for ( int i = 0; i < 10; i++ ) {
+                        Thread.sleep( 10 );
+                        host2.service( 0, events2 );
+                }
+                Thread.sleep( 50 );
+
+                datagramsReceived = 0;
+                assertEquals( 2, host1.service( 0, events1 ) );
+                assertEquals( 2, datagramsReceived );
+                assertEquals( Event.TYPE.CONNECTED, events1[0].getType() );
+                assertEquals( Event.TYPE.CONNECTED, events1[1].getType() );
+        }
+
+        /**
+         * Sends datagrams from the first host and returns how many of them the
+         * second reads in one pass.
+         */
+        int receiveDatagrams( int count ) throws Exception {
+                for ( int i = 0; i < count; i++ ) {
+                        Packet packet = new Packet( 4, Packet.FLAG_RELIABLE );
+                        packet.getData().putInt( i );
+                        peer1.send( (byte) 0, packet );
+                        host1.flush();
+                }
+                Thread.sleep( 50 );
+                datagramsReceived = 0;
+                host2.receiveIncomingCommands();
+                return datagramsReceived;
+        }
+
+        public void testEmptyBatch() throws Exception {
+                try {
+                        host1.service( 1, new Event[0] );
+                        fail( "An empty batch was serviced" );
+                } catch ( IllegalArgumentException e ) {
+                }
+        }
+
+        public void testDisconnect() {
+                connect();
+                peer2.disconnect();
+
+                boolean disconnected1 = false;
+                boolean disconnected2 = false;
+                for ( int i = 0; i < 100 && !( disconnected1 && disconnected2 ); i++ ) {
+                        int count = host1.service( 1, events1 );
+                        for ( int j = 0; j < count; j++ )
+                                if ( events1[j].getType() == Event.TYPE.DISCONNECTED ) {
+                                        assertSame( peer1, events1[j].getPeer() );
+                                        disconnected1 = true;
+                                }
+                        count = host2.service( 1, events2 );
+                        for ( int j = 0; j < count; j++ )
+                                if ( events2[j].getType() == Event.TYPE.DISCONNECTED ) {
+                                        assertSame( peer2, events2[j].getPeer() );
+                                        disconnected2 = true;
+                                }
+                }
+                assertTrue( disconnected1 );
+                assertTrue( disconnected2 );
+                assertEquals( 0, host1.getPeers().size() );
+                assertEquals( 0, host2.getPeers().size() );
+        }
+
+        public void testAcknowledgements() {
+                connect();
+                host1.flush();
+
+                SendReliable command = new SendReliable();
+                for ( int round = 0; round < 2; round++ ) {
+                        int count = round == 0 ? 20 : Peer.INITIAL_ACKNOWLEDGEMENTS * 2;
+                        for ( int i = 0; i < count; i++ ) {
+                                command.getHeader().setReliableSequenceNumber( 1000 + i );
+                                peer1.queueAcknowledgement( command, host1.getTimeCurrent() );
+                        }
+                        assertEquals( count, peer1.getAcknowledgementCount() );
+                        assertSame( peer1, host1.sendQueue );
+
+                        host1.flush();
+                        assertEquals( 0, peer1.getAcknowledgementCount() );
+                }
+                assertEquals( Peer.INITIAL_ACKNOWLEDGEMENTS * 2 * Peer.ACKNOWLEDGEMENT_SIZE, peer1.acknowledgements.length );
+        }
+
+        public void testEncodedCommands() throws Exception {
+                connect();
+                host1.flush();
+
+                Packet packet = new Packet( 4, Packet.FLAG_RELIABLE );
+                packet.getData().putInt( 1 );
+                peer1.send( (byte) 0, packet );
+                host1.flush();
+
+                OutgoingCommand outgoingCommand = peer1.getSentReliableCommands().getLast();
+                assertEquals( outgoingCommand.getCommand().byteSize(), outgoingCommand.encodedCommand.limit() );
+                CommandHeader header = new CommandHeader();
+                ByteBuffer encodedCommand = outgoingCommand.encodedCommand.duplicate();
+                encodedCommand.rewind();
+                header.fromBuffer( encodedCommand );
+                assertEquals( Command.SEND_RELIABLE, header.getCommand() );
+                assertEquals( outgoingCommand.getReliableSequenceNumber(), header.getReliableSequenceNumber() );
+                assertEquals( outgoingCommand.byteSize(), header.getCommandLength() );
+
+                for ( int i = 0; i < 100 && !peer1.getSentReliableCommands().isEmpty(); i++ ) {
+                        host1.service( 1, events1 );
+                        host2.service( 1, events2 );
+                }
+                assertEquals( 0, outgoingCommand.encodedCommand.limit() );
+        }
+
+        public void testIncomingChannels() throws Exception {
+                connect( 70 );
+                assertEquals( 70, peer2.getChannelCount() );
+                assertEquals( 2, peer2.incomingChannels.length );
+
+                byte[] channelIDs = { 69, 2 };
+                for ( byte channelID : channelIDs ) {
+                        Packet packet = new Packet( 4, Packet.FLAG_RELIABLE );
+                        packet.getData().putInt( channelID );
+                        peer1.send( channelID, packet );
+                }
+                host1.flush();
+                for ( int i = 0; i < 100 && ( peer2.incomingChannels[0] == 0 || peer2.incomingChannels[1] == 0 ); i++ ) {
+                        host2.socketWait( Host.WAIT_RECEIVE, 1 );
+                        host2.receiveIncomingCommands();
+                }
+                assertEquals( 1L << 2, peer2.incomingChannels[0] );
+                assertEquals( 1L << ( 69 - 64 ), peer2.incomingChannels[1] );
+
+                Event event = host2.service( 1 );
+                assertEquals( Event.TYPE.RECEIVED, event.getType() );
+                assertEquals( 2, event.getChannelID() );
+                event = host2.service( 1 );
+                assertEquals( Event.TYPE.RECEIVED, event.getType() );
+                assertEquals( 69, event.getChannelID() );
+                assertFalse( peer2.hasIncomingCommands() );
+                assertNull( peer2.selectChannel( (byte) 70 ) );
+        }
+
+        public void testHighResolutionTiming() throws Exception {
+                HostConfig config = new HostConfig.Builder( HostConfig.getDefault() ).setHighResolutionTiming( true ).build();
+                host1.destroy();
+                host1 = new Host( new InetSocketAddress( "localhost", 10020 ), 10, 0, 0, config );
+                connect();
+                assertEquals( CommandHeader.CAPABILITY_HIGH_RESOLUTION_TIMING | CommandHeader.CAPABILITY_SELECTIVE_ACKNOWLEDGEMENT,
+                                peer2.getCapabilities() );
+                assertEquals( CommandHeader.CAPABILITY_SELECTIVE_ACKNOWLEDGEMENT, peer1.getCapabilities() );
+
+                /*
+                 * A round trip of 250 microseconds moves the mean instead of being
+                 * measured as 0 milliseconds.
+                 */
+                int roundTripTime = peer1.getRoundTripTimeMicros();
+                Acknowledge acknowledge = new Acknowledge();
+                acknowledge.setReceivedSentTime( host1.getTimeStamp() - 250 );
+                acknowledge.execute( host1, peer1, new Header() );
+                assertEquals( roundTripTime + ( 250 - roundTripTime ) / 8, peer1.getRoundTripTimeMicros() );
+        }
+
+        public void testHighResolutionWrap() throws Exception {
+                HostConfig config = new HostConfig.Builder( HostConfig.getDefault() ).setHighResolutionTiming( true ).build();
+                host1.destroy();
+                host1 = new Host( new InetSocketAddress( "localhost", 10020 ), 10, 0, 0, config, clock );
+                connect();
+
+                /*
+                 * A command stamped just before the time in microseconds wraps
+                 * around is acknowledged 250 microseconds later, just after.
+                 */
+                clockTime = host1.timeBase + ( Integer.MAX_VALUE - 100L ) * 1000L;
+                clockStep = 0;
+                clockManual = true;
+                host1.updateTime();
+                int sentTime = host1.getTimeStamp();
+                clockTime += 250000L;
+                host1.updateTime();
+                assertTrue( host1.getTimeStamp() < sentTime );
+
+                int roundTripTime = peer1.getRoundTripTimeMicros();
+                Acknowledge acknowledge = new Acknowledge();
+                acknowledge.setReceivedSentTime( sentTime );
+                assertTrue( acknowledge.sampleRoundTripTime( host1, peer1 ) );
+                assertEquals( roundTripTime + ( 250 - roundTripTime ) / 8, peer1.getRoundTripTimeMicros() );
+
+                acknowledge.setReceivedSentTime( host1.getTimeStamp() + 1 );
+                assertFalse( acknowledge.sampleRoundTripTime( host1, peer1 ) );
+        }
+
+        public void testSelectiveAcknowledgements() throws Exception {
+                connect();
+                assertEquals( 1, acknowledgeCommands( 32 ) );
+                assertEquals( Header.BYTE_SIZE + SelectiveAcknowledge.BYTE_SIZE, host2.buffers.limit() );
+
+                HostConfig config = new HostConfig.Builder( HostConfig.getDefault() ).setSelectiveAcknowledgements( false ).build();
+                host2.destroy();
+                host2 = new Host( new InetSocketAddress( "localhost", 10021 ), 10, 0, 0, config );
+                connect();
+                assertEquals( 0, peer1.getCapabilities() );
+                assertEquals( 32, acknowledgeCommands( 32 ) );
+        }
+
+        /**
+         * Sends reliable packets from the first host in one datagram and returns
+         * the number of commands the second host acknowledges them with.
+         */
+        int acknowledgeCommands( int count ) throws Exception {
+                for ( int i = 0; i < 100 && !peer1.getSentReliableCommands().isEmpty(); i++ ) {
+                        host1.service( 1, events1 );
+                        host2.service( 1, events2 );
+                }
+                for ( int i = 0; i < count; i++ ) {
+                        Packet packet = new Packet( 4, Packet.FLAG_RELIABLE );
+                        packet.getData().putInt( i );
+                        peer1.send( (byte) 0, packet );
+                }
+                host1.flush();
+                for ( int i = 0; i < 100 && peer2.getAcknowledgementCount() < count; i++ ) {
+                        host2.socketWait( Host.WAIT_RECEIVE, 1 );
+                        host2.receiveIncomingCommands();
+                }
+                assertEquals( count, peer2.getAcknowledgementCount() );
+                host2.flush();
+                int commandCount = host2.getCommandCount();
+
+                for ( int i = 0; i < 100 && !peer1.getSentReliableCommands().isEmpty(); i++ ) {
+                        host1.socketWait( Host.WAIT_RECEIVE, 1 );
+                        host1.receiveIncomingCommands();
+                }
+                assertTrue( peer1.getSentReliableCommands().isEmpty() );
+                return commandCount;
+        }
+
+        public void testDelayedAcknowledgements() throws Exception {
+                HostConfig config = new HostConfig.Builder( HostConfig.getDefault() ).setAcknowledgementDelay( 200 ).build();
+                host2.destroy();
+                host2 = new Host( new InetSocketAddress( "localhost", 10021 ), 10, 0, 0, config );
+                connect();
+                for ( int i = 0; i < 1000 && ( !peer1.getSentReliableCommands().isEmpty() || peer2.getAcknowledgementCount() > 0 ); i++ ) {
+                        host1.service( 1, events1 );
+                        host2.service( 1, events2 );
+                }
+                assertEquals( 0, peer2.getAcknowledgementCount() );
+
+                Packet packet = new Packet( 4, Packet.FLAG_RELIABLE );
+                packet.getData().putInt( 1 );
+                peer1.send( (byte) 0, packet );
+                host1.flush();
+                int sentTime = host1.getTimeStamp();
+                for ( int i = 0; i < 100 && peer2.getAcknowledgementCount() == 0; i++ ) {
+                        host2.socketWait( Host.WAIT_RECEIVE, 1 );
+                        host2.receiveIncomingCommands();
+                }
+
+                Thread.sleep( 100 );
+                host2.flush();
+                assertEquals( 1, peer2.getAcknowledgementCount() );
+                assertEquals( peer2.getAcknowledgementTime() + 200, peer2.timer.getDeadline() );
+
+                /*
+                 * The reply carries the held acknowledgement, which echoes the sent
+                 * time moved on by the time it was held.
+                 */
+                packet = new Packet( 4, Packet.FLAG_RELIABLE );
+                packet.getData().putInt( 2 );
+                peer2.send( (byte) 0, packet );
+                host2.flush();
+                assertEquals( 0, peer2.getAcknowledgementCount() );
+                assertEquals( 2, host2.getCommandCount() );
+
+                ByteBuffer sent = host2.buffers.duplicate();
+                sent.position( Header.BYTE_SIZE );
+                Acknowledge acknowledge = new Acknowledge();
+                acknowledge.fromBuffer( sent );
+                assertEquals( Command.ACKNOWLEDGE, acknowledge.getHeader().getCommand() );
+                assertTrue( acknowledge.getReceivedSentTime() - sentTime >= 100 );
+
+                int roundTripTime = peer1.getRoundTripTimeMicros();
+                for ( int i = 0; i < 100 && !peer1.getSentReliableCommands().isEmpty(); i++ ) {
+                        host1.socketWait( Host.WAIT_RECEIVE, 1 );
+                        host1.updateTime();
+                        host1.receiveIncomingCommands();
+                }
+                assertTrue( peer1.getSentReliableCommands().isEmpty() );
+                int sample = roundTripTime + ( peer1.getRoundTripTimeMicros() - roundTripTime ) * 8;
+                assertTrue( sample < 100000 );
+        }
+
+        public void testSubMillisecondRetransmission() throws Exception {
+                HostConfig config = new HostConfig.Builder( HostConfig.getDefault() ).setHighResolutionTiming( true ).build();
+                host1.destroy();
+                host1 = new Host( new InetSocketAddress( "localhost", 10020 ), 10, 0, 0, config, clock );
+                connect();
+                for ( int i = 0; i < 100 && !peer1.getSentReliableCommands().isEmpty(); i++ ) {
+                        host1.service( 1, events1 );
+                        host2.service( 1, events2 );
+                }
+
+                /*
+                 * A command sent 950 microseconds into a millisecond, on a link with a
+                 * round trip of 300 microseconds, times out 250 microseconds into the
+                 * next one, so its timer is set for the one after.
+                 */
+                peer1.roundTripTime = 300;
+                peer1.roundTripTimeVariance = 0;
+                clockTime = host1.timeBase + ( System.nanoTime() - host1.timeBase ) / 1000000L * 1000000L + 1950000L;
+                clockManual = true;
+                host1.updateTime();
+                Packet packet = new Packet( 4, Packet.FLAG_RELIABLE );
+                packet.getData().putInt( 1 );
+                peer1.send( (byte) 0, packet );
+                host1.flush();
+                OutgoingCommand sent = peer1.getSentReliableCommands().getFirst();
+                assertEquals( 300, sent.getRoundTripTimeout() );
+                assertEquals( host1.getTimeCurrent() + 2, peer1.getNextTimeout() );
+
+                clockTime += 100000L;
+                host1.updateTime();
+                host1.expireTimers();
+                host1.sendOutgoingCommands( true );
+                assertSame( sent, peer1.getSentReliableCommands().getFirst() );
+                assertEquals( 300, sent.getRoundTripTimeout() );
+
+                clockTime += 950000L;
+                host1.updateTime();
+                host1.expireTimers();
+                host1.sendOutgoingCommands( true );
+                assertEquals( 600, sent.getRoundTripTimeout() );
+        }
+
+        public void testSendQueue() throws Exception {
+                connect();
+                for ( int i = 0; i < 100 && ( host1.sendQueue != null || host2.sendQueue != null ); i++ ) {
+                        host1.service( 1, events1 );
+                        host2.service( 1, events2 );
+                }
+                assertNull( host1.sendQueue );
+                assertNull( host2.sendQueue );
+
+                Packet packet = new Packet( 4, Packet.FLAG_RELIABLE );
+                packet.getData().putInt( 1 );
+                peer1.send( (byte) 0, packet );
+                assertSame( peer1, host1.sendQueue );
+                assertNull( peer1.nextSend );
+
+                host1.flush();
+                assertNull( host1.sendQueue );
+                assertFalse( peer1.getSentReliableCommands().isEmpty() );
+                assertTrue( peer1.timer.isScheduled() );
+                assertEquals( peer1.getNextTimeout(), peer1.timer.getDeadline() );
+
+                for ( int i = 0; i < 100 && !peer1.getSentReliableCommands().isEmpty(); i++ ) {
+                        host1.service( 1, events1 );
+                        host2.service( 1, events2 );
+                }
+                assertNull( host1.sendQueue );
+                assertTrue( peer1.getSentReliableCommands().isEmpty() );
+                assertTrue( peer1.timer.isScheduled() );
+                assertTrue( host1.getCommandPool().getOutgoingCommandCount() > 0 );
+        }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2005 Dizan Vasquez
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.jenet;
+
+import junit.framework.TestCase;
+
+public class TimerWheelTest extends TestCase {
+
+        public void testExpire() {
+                TimerWheel wheel = new TimerWheel( 1000 );
+                Timer first = new Timer( null );
+                Timer second = new Timer( null );
+
+                wheel.schedule( first, 1010 );
+                wheel.schedule( second, 1020 );
+                assertEquals( 2, wheel.size() );
+                assertEquals( 1010, wheel.nextDeadline( 2000 ) );
+
+                assertNull( wheel.expire( 1009 ) );
+                assertSame( first, wheel.expire( 1015 ) );
+                assertFalse( first.isScheduled() );
+                assertTrue( second.isScheduled() );
+                assertEquals( 1020, wheel.nextDeadline( 2000 ) );
+                assertEquals( 1017, wheel.nextDeadline( 1017 ) );
+
+                wheel.cancel( second );
+                assertEquals( 0, wheel.size() );
+                assertNull( wheel.expire( 1100 ) );
+        }
+
+        public void testLaterRevolution() {
+                TimerWheel wheel = new TimerWheel( 0 );
+                Timer near = new Timer( null );
+                Timer far = new Timer( null );
+
+                wheel.schedule( near, 5 );
+                wheel.schedule( far, 5 + TimerWheel.SLOTS );
+                assertSame( near, wheel.expire( 10 ) );
+                assertNull( near.next );
+                assertTrue( far.isScheduled() );
+                assertNull( wheel.expire( TimerWheel.SLOTS ) );
+                assertSame( far, wheel.expire( TimerWheel.SLOTS + 5 ) );
+        }
+
+        public void testPastDeadline() {
+                TimerWheel wheel = new TimerWheel( 500 );
+                Timer timer = new Timer( null );
+
+                wheel.schedule( timer, 100 );
+                assertEquals( 500, timer.getDeadline() );
+                assertSame( timer, wheel.expire( 500 ) );
+        }
+}